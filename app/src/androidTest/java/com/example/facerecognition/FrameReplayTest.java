@@ -0,0 +1,171 @@
+package com.example.facerecognition;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays a recorded sequence through the DetectionWorker and the FaceTracker on the test
+ * thread and checks the faces found on every frame.
+ * The recording is generated: a textured patch moving across a dark NV21 frame. The cascade
+ * would not find a face in it, so the detector finds the bright patch instead, while the
+ * tracking and the track ids are the real ones.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FrameReplayTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int FRAMES = 30;
+    private static final int PATCH_SIZE = 64;
+    private static final int START_X = 40;
+    private static final int START_Y = 80;
+    private static final int STEP_X = 4; // Movement per frame
+    private static final int TOLERANCE = 8; // Pixels
+
+    private File mRecording;
+    private CascadeClassifier mClassifier;
+
+    /**
+     * Finds the pixels brighter than the background, like a cascade would find a face
+     */
+    private static class PatchDetector extends FaceDetector {
+        private final Mat mMask = new Mat();
+        private final MatOfPoint mPoints = new MatOfPoint();
+
+        PatchDetector(CascadeClassifier classifier) {
+            super(classifier);
+            setDetectionWidth(0);
+        }
+
+        @Override
+        protected void detectFaces(Mat image, MatOfRect faces) {
+            Imgproc.threshold(image, mMask, 80, 255, Imgproc.THRESH_BINARY);
+            if (Core.countNonZero(mMask) == 0) {
+                faces.alloc(0);
+                return;
+            }
+            Core.findNonZero(mMask, mPoints);
+            faces.fromArray(Imgproc.boundingRect(mPoints));
+        }
+
+        @Override
+        public void release() {
+            super.release();
+            mMask.release();
+            mPoints.release();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        assertTrue(OpenCVLoader.initDebug());
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mClassifier = CascadeLoader.load(context, R.raw.haarcascade_frontalface_alt2, "haarcascade_frontalface_alt2.xml");
+        assertNotNull(mClassifier);
+
+        mRecording = new File(context.getCacheDir(), "replay_test.nv21");
+        record(mRecording);
+    }
+
+    @After
+    public void tearDown() {
+        mRecording.delete();
+    }
+
+    @Test
+    public void replay_tracksMovingFace() throws IOException {
+        final PatchDetector detector = new PatchDetector(mClassifier);
+        final FaceTracker tracker = new FaceTracker(detector);
+        final DetectionWorker worker = new DetectionWorker(tracker);
+        final FaceRects faces = new FaceRects();
+        final int[] trackIds = new int[FRAMES];
+        final Rect[] found = new Rect[FRAMES];
+
+        FrameReplayer replayer = new FrameReplayer(new File[] { mRecording }, WIDTH, HEIGHT);
+        FrameReplayer.Result result = replayer.run(new CameraBridgeViewBase.CvCameraViewListener2() {
+            private int mFrame;
+
+            @Override
+            public void onCameraViewStarted(int width, int height) {
+            }
+
+            @Override
+            public void onCameraViewStopped() {
+            }
+
+            @Override
+            public Mat onCameraFrame(CameraBridgeViewBase.CvCameraViewFrame inputFrame) {
+                worker.process(inputFrame.gray());
+                worker.getFaces(faces);
+                if (faces.size() == 1) {
+                    found[mFrame] = new Rect(faces.getX(0), faces.getY(0), faces.getWidth(0), faces.getHeight(0));
+                    trackIds[mFrame] = faces.getId(0);
+                }
+                mFrame++;
+                return inputFrame.gray();
+            }
+        });
+        detector.release();
+
+        assertEquals(FRAMES, result.getFrames());
+        assertEquals(FRAMES, worker.getDetectedFrames());
+        assertEquals(FRAMES, tracker.getDetectedFrames() + tracker.getTrackedFrames());
+        // The full detection runs at least at the detection interval, the other frames are tracked
+        assertTrue(tracker.getDetectedFrames() >= FRAMES / FaceTracker.DEFAULT_DETECTION_INTERVAL);
+
+        for (int i = 0; i < FRAMES; i++) {
+            assertNotNull("no face on frame " + i, found[i]);
+            assertEquals("x on frame " + i, START_X + i * STEP_X, found[i].x, TOLERANCE);
+            assertEquals("y on frame " + i, START_Y, found[i].y, TOLERANCE);
+            assertEquals("width on frame " + i, PATCH_SIZE, found[i].width, TOLERANCE);
+            assertEquals("track on frame " + i, trackIds[0], trackIds[i]);
+        }
+        assertNotEquals(FaceRects.NO_ID, trackIds[0]);
+    }
+
+    // Writes FRAMES NV21 frames with the patch moving STEP_X pixels to the right per frame
+    private static void record(File file) throws IOException {
+        Random random = new Random(42);
+        byte[] texture = new byte[PATCH_SIZE * PATCH_SIZE];
+        for (int i = 0; i < texture.length; i++)
+            texture[i] = (byte) (120 + random.nextInt(136));
+
+        byte[] frame = new byte[ReplayFrame.getFrameSize(WIDTH, HEIGHT)];
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for (int f = 0; f < FRAMES; f++) {
+                Arrays.fill(frame, 0, WIDTH * HEIGHT, (byte) 30);
+                Arrays.fill(frame, WIDTH * HEIGHT, frame.length, (byte) 128); // No color
+                int x0 = START_X + f * STEP_X;
+                for (int y = 0; y < PATCH_SIZE; y++)
+                    System.arraycopy(texture, y * PATCH_SIZE, frame, (START_Y + y) * WIDTH + x0, PATCH_SIZE);
+                out.write(frame);
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.facerecognition;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDMatch;
+import org.opencv.features2d.FlannBasedMatcher;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the exact gallery scan, the HNSW index and OpenCV's FlannBasedMatcher (randomized
+ * kd-trees) on the same embeddings. Run on a device with: ./gradlew connectedAndroidTest,
+ * the timings and the recall are logged with the GalleryIndexBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GalleryIndexBenchmark {
+
+    private static final String TAG = "GalleryIndexBenchmark";
+    private static final int DIMENSION = 128;
+    private static final int SIZE = 20000;
+    private static final int QUERIES = 200;
+
+    @Test
+    public void indexesVersusExactSearch() {
+        assertTrue(OpenCVLoader.initDebug());
+        Random random = new Random(42);
+
+        FaceGallery gallery = new FaceGallery(DIMENSION, SIZE);
+        HnswIndex index = new HnswIndex(DIMENSION);
+        Mat train = new Mat(SIZE, DIMENSION, CvType.CV_32F);
+        float[] embedding = new float[DIMENSION];
+        for (int i = 0; i < SIZE; i++) {
+            randomEmbedding(random, embedding);
+            gallery.add(i, embedding, 0);
+            index.add(i, embedding, 0);
+            train.put(i, 0, embedding);
+        }
+
+        float[][] queries = new float[QUERIES][DIMENSION];
+        int[] expected = new int[QUERIES];
+        FaceGallery.Match match = new FaceGallery.Match();
+        for (int q = 0; q < QUERIES; q++) {
+            gallery.getEmbedding(random.nextInt(SIZE), queries[q], 0);
+            for (int i = 0; i < DIMENSION; i++)
+                queries[q][i] += (float) (0.5 * random.nextGaussian() / Math.sqrt(DIMENSION));
+            FaceGallery.normalize(queries[q], 0, DIMENSION);
+            gallery.findNearest(queries[q], 0, match);
+            expected[q] = match.id;
+        }
+
+        long start = System.nanoTime();
+        for (float[] query : queries)
+            gallery.findNearest(query, 0, match);
+        log("exact", System.nanoTime() - start, QUERIES);
+
+        int[] labels = new int[1];
+        float[] similarities = new float[1];
+        for (int ef : new int[] {16, 50, 200}) {
+            index.setEf(ef);
+            int hits = 0;
+            start = System.nanoTime();
+            for (int q = 0; q < QUERIES; q++) {
+                if (index.search(queries[q], 0, 1, labels, similarities) == 1 && labels[0] == expected[q])
+                    hits++;
+            }
+            log("hnsw ef " + ef, System.nanoTime() - start, hits);
+        }
+
+        FlannBasedMatcher matcher = FlannBasedMatcher.create();
+        matcher.add(Collections.singletonList(train));
+        matcher.train();
+        Mat query = new Mat(1, DIMENSION, CvType.CV_32F);
+        MatOfDMatch matches = new MatOfDMatch();
+        int hits = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < QUERIES; q++) {
+            query.put(0, 0, queries[q]);
+            matcher.match(query, matches);
+            if (matches.rows() == 1 && matches.toArray()[0].trainIdx == expected[q])
+                hits++;
+        }
+        log("flann", System.nanoTime() - start, hits);
+
+        query.release();
+        matches.release();
+        train.release();
+    }
+
+    private static void log(String name, long nanos, int hits) {
+        Log.i(TAG, String.format(Locale.US, "%s: %.1f us per query, recall@1 %.3f",
+                name, nanos / 1e3 / QUERIES, (double) hits / QUERIES));
+    }
+
+    private static void randomEmbedding(Random random, float[] embedding) {
+        for (int i = 0; i < embedding.length; i++)
+            embedding[i] = (float) random.nextGaussian();
+        FaceGallery.normalize(embedding, 0, embedding.length);
+    }
+}
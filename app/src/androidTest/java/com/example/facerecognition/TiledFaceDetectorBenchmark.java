@@ -0,0 +1,119 @@
+package com.example.facerecognition;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the tiled detector with a single detectMultiScale() call on a large synthetic frame,
+ * both in time and in the faces found.
+ * Run on a device with: ./gradlew connectedAndroidTest, the timings are logged with the
+ * TiledFaceDetectorBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TiledFaceDetectorBenchmark {
+
+    private static final String TAG = "TiledFaceDetectorBenchmark";
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 20;
+    private static final double MIN_MATCH_OVERLAP = 0.5;
+
+    private Mat mFrame;
+    private MatOfRect mFaces;
+    private CascadeClassifier[] mClassifiers;
+
+    @Before
+    public void setUp() throws Exception {
+        assertTrue(OpenCVLoader.initDebug());
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        mClassifiers = new CascadeClassifier[Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < mClassifiers.length; i++) {
+            mClassifiers[i] = CascadeLoader.load(context, R.raw.haarcascade_frontalface_alt2, "haarcascade_frontalface_alt2.xml");
+            assertNotNull(mClassifiers[i]);
+        }
+
+        // Smooth noise, so the cascade gets past its first stages now and then
+        mFrame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+        Core.randn(mFrame, 128, 40);
+        Imgproc.GaussianBlur(mFrame, mFrame, new Size(5, 5), 0);
+        mFaces = new MatOfRect();
+    }
+
+    @After
+    public void tearDown() {
+        mFrame.release();
+        mFaces.release();
+    }
+
+    @Test
+    public void tiledVersusSingleCall() {
+        FaceDetector single = new FaceDetector(mClassifiers[0]);
+        TiledFaceDetector tiled = new TiledFaceDetector(mClassifiers);
+        for (FaceDetector detector : new FaceDetector[] {single, tiled}) {
+            detector.setDetectionWidth(0); // The whole frame, as the tiles pay off on large images
+            detector.setFaceSize(0.1f, 0.3f);
+        }
+
+        FaceRects singleFaces = new FaceRects();
+        FaceRects tiledFaces = new FaceRects();
+        double singleMs = measure(single, singleFaces);
+        double tiledMs = measure(tiled, tiledFaces);
+        Log.i(TAG, String.format(Locale.US, "single call %.2f ms, %d faces, %d strips %.2f ms, %d faces, speedup %.2fx",
+                singleMs, singleFaces.size(), tiled.getStripCount(), tiledMs, tiledFaces.size(), singleMs / tiledMs));
+
+        single.release();
+        tiled.release();
+        tiled.shutdown();
+
+        // The faces are at most 0.3 of the height, so the wide frame is split for every core
+        if (mClassifiers.length > 1)
+            assertTrue("strips " + tiled.getStripCount(), tiled.getStripCount() > 1);
+        // Every face fits into one of the strips, so the tiles find what the single call finds
+        for (int i = 0; i < singleFaces.size(); i++)
+            assertTrue("face " + i + " not found by the tiles", bestOverlap(singleFaces, i, tiledFaces) >= MIN_MATCH_OVERLAP);
+        for (int i = 0; i < tiledFaces.size(); i++)
+            assertTrue("tiled face " + i + " not found by the single call", bestOverlap(tiledFaces, i, singleFaces) >= MIN_MATCH_OVERLAP);
+    }
+
+    private static double bestOverlap(FaceRects faces, int index, FaceRects others) {
+        double best = 0;
+        for (int j = 0; j < others.size(); j++)
+            best = Math.max(best, FaceRects.overlap(faces, index, others, j));
+        return best;
+    }
+
+    // Returns the mean time in milliseconds and the faces of the last run
+    private double measure(FaceDetector detector, FaceRects faces) {
+        for (int i = 0; i < WARMUP; i++)
+            detector.detect(mFrame, mFaces);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            detector.detect(mFrame, mFaces);
+        double ms = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+        faces.fill(mFaces);
+        return ms;
+    }
+}
@@ -3,27 +3,29 @@
 
 package com.example.facerecognition;
 
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.hardware.display.DisplayManager;
 import android.os.Build;
 import android.os.Environment;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Log;
-import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.WindowManager;
 
 import org.opencv.R;
-import org.opencv.android.FpsMeter;
 import org.opencv.android.Utils;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
@@ -39,15 +41,23 @@ import java.util.List;
  * The clients shall implement CvCameraViewListener.
  */
 @SuppressWarnings({"unused", "UnnecessaryInterfaceModifier"})
-public abstract class CameraBridgeViewBase extends SurfaceView implements SurfaceHolder.Callback {
+public abstract class CameraBridgeViewBase extends SurfaceView implements SurfaceHolder.Callback, FrameSource {
 
     private static final String TAG = "CameraBridge";
     private static final int MAX_UNSPECIFIED = -1;
     private static final int STOPPED = 0;
     private static final int STARTED = 1;
+    private static final int ORIENTATION_UNKNOWN = Integer.MIN_VALUE;
 
     private int mState = STOPPED;
     private Bitmap mCacheBitmap;
+    private final Matrix mDrawMatrix = new Matrix();
+    private final float[] mDrawValues = new float[DrawTransform.MATRIX_SIZE];
+    private int mDrawOrientation = ORIENTATION_UNKNOWN;
+    private int mDrawCameraIndex;
+    private int mDrawCanvasWidth;
+    private int mDrawCanvasHeight;
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
     private CvCameraViewListener2 mListener;
     private boolean mSurfaceExist;
     private final Object mSyncObject = new Object();
@@ -61,6 +71,11 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected int mCameraIndex;
     protected boolean mEnabled;
     protected FpsMeter mFpsMeter = null;
+    protected FrameProfiler mProfiler = null;
+    protected final MatPool mMatPool = new MatPool();
+    private boolean mShowProfiler;
+    private final TimedFrame mTimedFrame = new TimedFrame();
+    private final Object mDrawLock = new Object();
 
     public static final int CAMERA_ID_ANY   = -1;
     public static final int CAMERA_ID_BACK  = 99;
@@ -69,6 +84,10 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     public static final int GRAY = 2;
 
     private WindowManager mWindowManager;
+    private volatile int mScreenOrientation;
+    private OrientationDisplayListener mDisplayListener;
+    private OnOrientationChangedListener mOrientationListener;
+    private volatile CanvasOverlay mCanvasOverlay;
 
     public CameraBridgeViewBase(Context context, int cameraId) {
         super(context);
@@ -97,6 +116,105 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         mMaxWidth = MAX_UNSPECIFIED;
         mMaxHeight = MAX_UNSPECIFIED;
         mWindowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        mScreenOrientation = computeScreenOrientation();
+    }
+
+    public interface OnOrientationChangedListener {
+        /**
+         * This method is invoked on the UI thread when the orientation of the device has changed.
+         * Anything cached for the previous orientation should be invalidated here.
+         * @param orientation - the new orientation, one of the ActivityInfo.SCREEN_ORIENTATION_* values
+         */
+        public void onOrientationChanged(int orientation);
+    }
+
+    /**
+     * @param listener - listener notified when the screen orientation changes
+     */
+    public void setOnOrientationChangedListener(OnOrientationChangedListener listener) {
+        mOrientationListener = listener;
+    }
+
+    public interface CanvasOverlay {
+        /**
+         * This method is invoked on the drawing thread after every frame is drawn, so text can be
+         * drawn upright whichever way the frame is rotated and mirrored.
+         * @param canvas - the canvas the frame was drawn on
+         * @param frameToCanvas - maps the frame coordinates to the canvas, not to be modified
+         */
+        public void draw(Canvas canvas, Matrix frameToCanvas);
+    }
+
+    /**
+     * @param overlay - overlay drawn on top of every frame, or null
+     */
+    public void setCanvasOverlay(CanvasOverlay overlay) {
+        mCanvasOverlay = overlay;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            mDisplayListener = new OrientationDisplayListener();
+            mDisplayListener.register();
+        }
+        updateScreenOrientation(); // It might have changed while detached
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (mDisplayListener != null) {
+            mDisplayListener.unregister();
+            mDisplayListener = null;
+        }
+        mMatPool.clear();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // Display listener is not available on older devices. These do not report a rotation by 180 degrees
+        updateScreenOrientation();
+    }
+
+    /**
+     * Recomputes the orientation of the device and notifies the listener if it has changed
+     */
+    private void updateScreenOrientation() {
+        int orientation = computeScreenOrientation();
+        if (orientation != mScreenOrientation) {
+            mScreenOrientation = orientation;
+            if (mOrientationListener != null)
+                mOrientationListener.onOrientationChanged(orientation);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private class OrientationDisplayListener implements DisplayManager.DisplayListener {
+        private final DisplayManager mDisplayManager = (DisplayManager) getContext().getSystemService(Context.DISPLAY_SERVICE);
+
+        void register() {
+            mDisplayManager.registerDisplayListener(this, null); // Called on the UI thread
+        }
+
+        void unregister() {
+            mDisplayManager.unregisterDisplayListener(this);
+        }
+
+        @Override
+        public void onDisplayAdded(int displayId) {
+        }
+
+        @Override
+        public void onDisplayRemoved(int displayId) {
+        }
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            updateScreenOrientation();
+        }
     }
 
     public void flipCamera() {
@@ -268,6 +386,22 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         }
     }
 
+    /**
+     * Same as enableView(), the frames are delivered once the surface is available
+     */
+    @Override
+    public void start() {
+        enableView();
+    }
+
+    /**
+     * Same as disableView()
+     */
+    @Override
+    public void stop() {
+        disableView();
+    }
+
     /**
      * This method enables label with fps value on the screen
      */
@@ -282,10 +416,50 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         mFpsMeter = null;
     }
 
+    /**
+     * @return number of frames that were received from the camera but never delivered,
+     *         or -1 if the view cannot tell
+     */
+    public long getDroppedFrames() {
+        return -1;
+    }
+
+    /**
+     * This method enables collecting the latencies of the frame pipeline stages
+     * @param showOverlay - draw the statistics on top of the preview
+     */
+    public void enableProfiler(boolean showOverlay) {
+        if (mProfiler == null)
+            mProfiler = new FrameProfiler();
+        mShowProfiler = showOverlay;
+    }
+
+    public void disableProfiler() {
+        mProfiler = null;
+        mShowProfiler = false;
+    }
+
+    /**
+     * Pool the frame buffers of the view are leased from. Listeners can lease their own
+     * buffers of the frame size from it, they have to be returned in onCameraViewStopped().
+     * @return the pool
+     */
+    public MatPool getMatPool() {
+        return mMatPool;
+    }
+
+    /**
+     * @return the profiler, or null if it is not enabled
+     */
+    public FrameProfiler getProfiler() {
+        return mProfiler;
+    }
+
     /**
      *
      * @param listener - set the CvCameraViewListener2
      */
+    @Override
     public void setCvCameraViewListener(CvCameraViewListener2 listener) {
         mListener = listener;
     }
@@ -354,6 +528,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                 if (mListener != null) {
                     mListener.onCameraViewStopped();
                 }
+                mMatPool.checkLeaks(); // Everything leased for the frames must be returned by now
                 break;
         }
     }
@@ -400,16 +575,10 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
     private void onExitStartedState() {
         disconnectCamera();
-        if (mCacheBitmap != null) {
-            mCacheBitmap.recycle();
-        }
-    }
-
-    private float getRatio(int widthSource, int heightSource, int widthTarget, int heightTarget) {
-        if (widthTarget <= heightTarget) {
-            return (float) heightTarget / (float) heightSource;
-        } else {
-            return (float) widthTarget / (float) widthSource;
+        synchronized (mDrawLock) { // A CanvasFrameSink might still be drawing
+            if (mCacheBitmap != null) {
+                mCacheBitmap.recycle();
+            }
         }
     }
 
@@ -533,59 +702,23 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     }
 
     /**
-     * Determine current orientation of the device.
-     * Source: http://stackoverflow.com/a/10383164/2175837
+     * Returns the current orientation of the device. The value is tracked by a display
+     * listener, so this is cheap enough to be called from the frame path on any thread.
      * @return Returns the current orientation of the device.
      */
     public int getScreenOrientation() {
+        return mScreenOrientation;
+    }
+
+    /**
+     * Determine current orientation of the device.
+     * @return Returns the current orientation of the device.
+     */
+    private int computeScreenOrientation() {
         int rotation = mWindowManager.getDefaultDisplay().getRotation();
         DisplayMetrics dm = new DisplayMetrics();
         mWindowManager.getDefaultDisplay().getMetrics(dm);
-        int width = dm.widthPixels;
-        int height = dm.heightPixels;
-        int orientation;
-        // if the device's natural orientation is portrait:
-        if ((rotation == Surface.ROTATION_0 || rotation == Surface.ROTATION_180) && height > width || (rotation == Surface.ROTATION_90 || rotation == Surface.ROTATION_270) && width > height) {
-            switch(rotation) {
-                case Surface.ROTATION_0:
-                    orientation = ActivityInfo.SCREEN_ORIENTATION_PORTRAIT;
-                    break;
-                case Surface.ROTATION_90:
-                    orientation = ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE;
-                    break;
-                case Surface.ROTATION_180:
-                    orientation = ActivityInfo.SCREEN_ORIENTATION_REVERSE_PORTRAIT;
-                    break;
-                case Surface.ROTATION_270:
-                    orientation = ActivityInfo.SCREEN_ORIENTATION_REVERSE_LANDSCAPE;
-                    break;
-                default:
-                    Log.e(TAG, "Unknown screen orientation. Defaulting to portrait");
-                    orientation = ActivityInfo.SCREEN_ORIENTATION_PORTRAIT;
-                    break;
-            }
-        } else { // If the device's natural orientation is landscape or if the device is square:
-            switch(rotation) {
-                case Surface.ROTATION_0:
-                    orientation = ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE;
-                    break;
-                case Surface.ROTATION_90:
-                    orientation = ActivityInfo.SCREEN_ORIENTATION_PORTRAIT;
-                    break;
-                case Surface.ROTATION_180:
-                    orientation = ActivityInfo.SCREEN_ORIENTATION_REVERSE_LANDSCAPE;
-                    break;
-                case Surface.ROTATION_270:
-                    orientation = ActivityInfo.SCREEN_ORIENTATION_REVERSE_PORTRAIT;
-                    break;
-                default:
-                    Log.e(TAG, "Unknown screen orientation. Defaulting to landscape");
-                    orientation = ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE;
-                    break;
-            }
-        }
-
-        return orientation;
+        return DrawTransform.screenOrientation(rotation, dm.widthPixels, dm.heightPixels);
     }
 
     /**
@@ -595,16 +728,59 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
      * @param frame - the current frame to be delivered
      */
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
+        deliverAndDrawFrame(frame, System.nanoTime());
+    }
+
+    /**
+     * Same as deliverAndDrawFrame(CvCameraViewFrame), but also tells when the frame was
+     * captured, so the time it spent waiting for delivery can be profiled.
+     * @param frame - the current frame to be delivered
+     * @param captureTime - System.nanoTime() when the frame was received from the camera
+     */
+    protected void deliverAndDrawFrame(CvCameraViewFrame frame, long captureTime) {
         Mat modified;
 
+        FrameProfiler profiler = mProfiler;
+        long start = System.nanoTime();
+        if (profiler != null) {
+            profiler.record(FrameProfiler.STAGE_QUEUE, start - captureTime);
+            mTimedFrame.mFrame = frame; // Measures the color conversion
+            mTimedFrame.mProfiler = profiler;
+            frame = mTimedFrame;
+        }
+
         if (mListener != null) {
             modified = mListener.onCameraFrame(frame);
         } else {
             modified = frame.rgba();
         }
 
-        boolean bmpValid = true;
-        if (modified != null) {
+        if (profiler != null) {
+            mTimedFrame.mFrame = null;
+            profiler.record(FrameProfiler.STAGE_LISTENER, System.nanoTime() - start);
+        }
+
+        // A listener returning null draws the frames itself, e.g. through a CanvasFrameSink
+        if (modified != null)
+            drawFrame(modified, captureTime);
+    }
+
+    /**
+     * Draws a frame on the surface, rotated and mirrored for the current orientation.
+     * It is called for the result of the listener, or by a CanvasFrameSink. Must not be
+     * called concurrently and only while the camera is started.
+     * @param modified - RGBA frame of the size of the camera frames
+     * @param captureTime - System.nanoTime() when the frame was received from the camera
+     */
+    protected void drawFrame(Mat modified, long captureTime) {
+        synchronized (mDrawLock) {
+            if (mCacheBitmap == null || mCacheBitmap.isRecycled())
+                return;
+
+            FrameProfiler profiler = mProfiler;
+            long time = System.nanoTime();
+
+            boolean bmpValid = true;
             try {
                 Utils.matToBitmap(modified, mCacheBitmap);
             } catch(Exception e) {
@@ -613,57 +789,94 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                 Log.e(TAG, "Utils.matToBitmap() throws an exception: " + e.getMessage());
                 bmpValid = false;
             }
-        }
 
-        if (bmpValid && mCacheBitmap != null) {
-            Canvas canvas = getHolder().lockCanvas();
-            if (canvas != null) {
-                canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
-                int degrees = 0;
+            if (profiler != null) {
+                long now = System.nanoTime();
+                profiler.record(FrameProfiler.STAGE_MAT_TO_BITMAP, now - time);
+                time = now;
+            }
+
+            if (bmpValid) {
+                Canvas canvas = getHolder().lockCanvas();
+                if (canvas != null) {
+                    canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
 
-                if (!isEmulator()) { // Rotation is always reported as portrait on the emulator for some reason
                     int orientation = getScreenOrientation();
-                    switch (orientation) {
-                        case ActivityInfo.SCREEN_ORIENTATION_PORTRAIT:
-                            degrees = -90;
-                            break;
-                        case ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE:
-                            break;
-                        case ActivityInfo.SCREEN_ORIENTATION_REVERSE_PORTRAIT:
-                            degrees = 90;
-                            break;
-                        case ActivityInfo.SCREEN_ORIENTATION_REVERSE_LANDSCAPE:
-                            degrees = 180;
-                            break;
+                    if (orientation != mDrawOrientation || mCameraIndex != mDrawCameraIndex
+                            || canvas.getWidth() != mDrawCanvasWidth || canvas.getHeight() != mDrawCanvasHeight)
+                        updateDrawMatrix(orientation, canvas.getWidth(), canvas.getHeight());
+
+                    canvas.drawBitmap(mCacheBitmap, mDrawMatrix, mBitmapPaint);
+
+                    CanvasOverlay overlay = mCanvasOverlay;
+                    if (overlay != null)
+                        overlay.draw(canvas, mDrawMatrix);
+
+                    if (mFpsMeter != null) {
+                        mFpsMeter.setDroppedFrames(getDroppedFrames());
+                        mFpsMeter.measure();
+                        mFpsMeter.draw(canvas, 20, 30);
+                    }
+                    if (profiler != null && mShowProfiler)
+                        profiler.draw(canvas, 20, 60);
+                    getHolder().unlockCanvasAndPost(canvas);
+
+                    if (profiler != null) {
+                        long now = System.nanoTime();
+                        profiler.record(FrameProfiler.STAGE_DRAW, now - time);
+                        profiler.record(FrameProfiler.STAGE_TOTAL, now - captureTime);
                     }
                 }
+            }
+        }
+    }
 
-                Matrix matrix = new Matrix();
-                matrix.postRotate(degrees);
-                Bitmap outputBitmap = Bitmap.createBitmap(mCacheBitmap, 0, 0, mCacheBitmap.getWidth(), mCacheBitmap.getHeight(), matrix, true);
+    /**
+     * Frame wrapper which measures how long the color conversion takes.
+     * A single instance is reused for every frame.
+     */
+    private static class TimedFrame implements CvCameraViewFrame {
+        CvCameraViewFrame mFrame;
+        FrameProfiler mProfiler;
+
+        @Override
+        public Mat rgba() {
+            long start = System.nanoTime();
+            Mat rgba = mFrame.rgba();
+            mProfiler.record(FrameProfiler.STAGE_COLOR_CONVERT, System.nanoTime() - start);
+            return rgba;
+        }
 
-                if (outputBitmap.getWidth() <= canvas.getWidth()) {
-                    mScale = getRatio(outputBitmap.getWidth(), outputBitmap.getHeight(), canvas.getWidth(), canvas.getHeight());
-                } else {
-                    mScale = getRatio(canvas.getWidth(), canvas.getHeight(), outputBitmap.getWidth(), outputBitmap.getHeight());
-                }
+        @Override
+        public Mat gray() {
+            return mFrame.gray();
+        }
+    }
 
-                if (mScale != 0) {
-                    canvas.scale(mScale, mScale, 0, 0);
-                }
+    /**
+     * Computes the transformation from the frame to the canvas for the given orientation
+     * and the current camera. The mirroring and the rotation are combined into a single matrix,
+     * so the frame pixels are never transformed. It is cached until the orientation, the camera
+     * or the size of the canvas or the frame changes.
+     * @param orientation - the current orientation of the device
+     * @param canvasWidth - width of the canvas
+     * @param canvasHeight - height of the canvas
+     */
+    private void updateDrawMatrix(int orientation, int canvasWidth, int canvasHeight) {
+        // Rotation is always reported as portrait on the emulator for some reason, so it is only mirrored
+        mScale = DrawTransform.computeMatrix(orientation, mCameraIndex == CAMERA_ID_FRONT, isEmulator(),
+                mCacheBitmap.getWidth(), mCacheBitmap.getHeight(), canvasWidth, canvasHeight, mDrawValues);
 
-                if (BuildConfig.DEBUG)
-                    Log.v(TAG, "mStretch value: " + mScale);
+        if (BuildConfig.DEBUG)
+            Log.v(TAG, "mStretch value: " + mScale);
 
-                canvas.drawBitmap(outputBitmap, 0, 0, null);
+        // Mirror, rotate and scale while drawing instead of transforming the frame itself
+        mDrawMatrix.setValues(mDrawValues);
 
-                if (mFpsMeter != null) {
-                    mFpsMeter.measure();
-                    mFpsMeter.draw(canvas, 20, 30);
-                }
-                getHolder().unlockCanvasAndPost(canvas);
-            }
-        }
+        mDrawOrientation = orientation;
+        mDrawCameraIndex = mCameraIndex;
+        mDrawCanvasWidth = canvasWidth;
+        mDrawCanvasHeight = canvasHeight;
     }
 
     /**
@@ -685,6 +898,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected void AllocateCache()
     {
         mCacheBitmap = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+        mDrawOrientation = ORIENTATION_UNKNOWN; // The frame size might have changed
     }
 
     public interface ListItemAccessor {
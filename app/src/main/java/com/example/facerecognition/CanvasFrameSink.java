@@ -0,0 +1,33 @@
+package com.example.facerecognition;
+
+import org.opencv.core.Mat;
+
+/**
+ * Draws the output of a FramePipeline on a camera view, with the same rotation, mirroring
+ * and overlays as the frames the view draws itself. It is meant for pipelines running on
+ * an executor, which return null to the view and draw the frames once they are processed.
+ */
+public class CanvasFrameSink implements FrameSink {
+
+    private final CameraBridgeViewBase mView;
+
+    /**
+     * @param view - the view to draw on, it must be the source of the pipeline
+     */
+    public CanvasFrameSink(CameraBridgeViewBase view) {
+        mView = view;
+    }
+
+    @Override
+    public void onStarted(int width, int height) {
+    }
+
+    @Override
+    public void onFrame(Mat frame, long captureTime) {
+        mView.drawFrame(frame, captureTime);
+    }
+
+    @Override
+    public void onStopped() {
+    }
+}
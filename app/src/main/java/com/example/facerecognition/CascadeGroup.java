@@ -0,0 +1,213 @@
+package com.example.facerecognition;
+
+import android.util.Log;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Several cascades which run concurrently over the same image, e.g. frontal faces,
+ * profiles and mirrored profiles. The first cascade runs on the calling thread, the others
+ * on a fixed pool with a thread for each of them, so a detection takes as long as the
+ * slowest cascade rather than all of them together. Faces found by more than one cascade
+ * are merged with non-maximum suppression.
+ * Every cascade needs its own CascadeClassifier, as a classifier must not be used by
+ * several threads at once, even for a mirrored copy of the same cascade.
+ */
+public class CascadeGroup {
+
+    private static final String TAG = "CascadeGroup";
+
+    public static final double DEFAULT_MAX_OVERLAP = 0.3;
+
+    private static final double SCALE_FACTOR = 1.1;
+    private static final int MIN_NEIGHBORS = 3;
+
+    private final List<Cascade> mCascades = new ArrayList<Cascade>();
+    private final List<Future<?>> mFutures = new ArrayList<Future<?>>();
+    private final FaceRects mMerged = new FaceRects();
+    private final Size mWindowSize = new Size();
+    private ExecutorService mExecutor;
+    private double mMaxOverlap = DEFAULT_MAX_OVERLAP;
+
+    /**
+     * Adds a cascade, it must not be called while detecting
+     * @param classifier - loaded cascade, not shared with any other cascade
+     * @param mirrored - run the cascade on the horizontally flipped image, e.g. to find
+     *                 profiles facing the other way with a single-sided profile cascade
+     */
+    public void add(CascadeClassifier classifier, boolean mirrored) {
+        mCascades.add(new Cascade(classifier, mirrored));
+        Size size = classifier.getOriginalWindowSize();
+        mWindowSize.width = Math.max(mWindowSize.width, size.width);
+        mWindowSize.height = Math.max(mWindowSize.height, size.height);
+    }
+
+    /**
+     * @param maxOverlap - intersection over union above which two faces are merged
+     */
+    public void setMaxOverlap(double maxOverlap) {
+        mMaxOverlap = maxOverlap;
+    }
+
+    /**
+     * @return number of cascades
+     */
+    public int size() {
+        return mCascades.size();
+    }
+
+    /**
+     * @return the largest of the window sizes of the cascades
+     */
+    public Size getOriginalWindowSize() {
+        return mWindowSize;
+    }
+
+    /**
+     * Runs all of the cascades on the image and merges their results
+     * @param image - single channel image, it is only read
+     * @param faces - merged faces in the image coordinates
+     * @param minSize - minimal face size
+     * @param maxSize - maximal face size
+     */
+    public void detectMultiScale(Mat image, MatOfRect faces, Size minSize, Size maxSize) {
+        int count = mCascades.size();
+        if (count > 1 && mExecutor == null)
+            mExecutor = Executors.newFixedThreadPool(count - 1, new DetectionThreadFactory());
+
+        try {
+            for (int i = 1; i < count; i++) {
+                Cascade cascade = mCascades.get(i);
+                cascade.prepare(image, minSize, maxSize);
+                mFutures.add(mExecutor.submit(cascade));
+            }
+
+            Cascade first = mCascades.get(0);
+            first.prepare(image, minSize, maxSize);
+            first.call();
+            mMerged.clear();
+            first.appendTo(mMerged);
+
+            // All of the cascades must be finished before their buffers are used again
+            for (int i = 1; i < count; i++) {
+                if (await(mFutures.get(i - 1)))
+                    mCascades.get(i).appendTo(mMerged);
+            }
+        } finally {
+            // Also after a failure, so the next call does not pick up stale futures
+            for (Future<?> future : mFutures) {
+                if (!future.isDone())
+                    await(future);
+            }
+            mFutures.clear();
+        }
+
+        mMerged.suppressOverlaps(mMaxOverlap);
+        mMerged.copyTo(faces);
+    }
+
+    private static boolean await(Future<?> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return true;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Cascade failed", e.getCause());
+                    return false;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the threads and releases the native memory. The group can still be used afterwards.
+     */
+    public void release() {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
+        for (Cascade cascade : mCascades)
+            cascade.release();
+    }
+
+    private static class Cascade implements Callable<Void> {
+        private final CascadeClassifier mClassifier;
+        private final boolean mMirrored;
+        private final Mat mFlipped = new Mat();
+        private final MatOfRect mFaces = new MatOfRect();
+        private final FaceRects mRects = new FaceRects();
+        private Mat mImage;
+        private Size mMinSize;
+        private Size mMaxSize;
+
+        Cascade(CascadeClassifier classifier, boolean mirrored) {
+            mClassifier = classifier;
+            mMirrored = mirrored;
+        }
+
+        void prepare(Mat image, Size minSize, Size maxSize) {
+            mImage = image;
+            mMinSize = minSize;
+            mMaxSize = maxSize;
+        }
+
+        @Override
+        public Void call() {
+            Mat image = mImage;
+            if (mMirrored) {
+                Core.flip(mImage, mFlipped, 1);
+                image = mFlipped;
+            }
+            mClassifier.detectMultiScale(image, mFaces, SCALE_FACTOR, MIN_NEIGHBORS, 0, mMinSize, mMaxSize);
+            mRects.fill(mFaces);
+            return null;
+        }
+
+        void appendTo(FaceRects faces) {
+            int width = mImage.cols();
+            for (int i = 0; i < mRects.size(); i++) {
+                int x = mRects.getX(i);
+                if (mMirrored) // Back from the flipped image
+                    x = width - x - mRects.getWidth(i);
+                faces.add(x, mRects.getY(i), mRects.getWidth(i), mRects.getHeight(i));
+            }
+            mImage = null;
+        }
+
+        void release() {
+            mFlipped.release();
+        }
+    }
+
+    private static class DetectionThreadFactory implements ThreadFactory {
+        private int mCount;
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, TAG + "-" + mCount++);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
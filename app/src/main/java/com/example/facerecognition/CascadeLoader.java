@@ -0,0 +1,55 @@
+package com.example.facerecognition;
+
+import android.content.Context;
+
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads Haar cascades shipped in res/raw. CascadeClassifier can only read from a file,
+ * so the resource is first copied into the private app directory.
+ */
+public final class CascadeLoader {
+
+    private CascadeLoader() {
+    }
+
+    /**
+     * Loads the cascade from the raw resource
+     * @param context - context used to access the resources
+     * @param resId - id of the raw resource e.g. R.raw.haarcascade_frontalface_alt2
+     * @param fileName - name of the temporary file the cascade is copied to
+     * @return loaded cascade, or null if it could not be parsed
+     * @throws IOException if the cascade could not be copied
+     */
+    public static CascadeClassifier load(Context context, int resId, String fileName) throws IOException {
+        File cascadeDirectory = context.getDir("cascade", Context.MODE_PRIVATE);
+        File cascadeFile = new File(cascadeDirectory, fileName);
+
+        InputStream inputStream = context.getResources().openRawResource(resId);
+        FileOutputStream fileOutputStream = new FileOutputStream(cascadeFile);
+        try {
+            byte[] buffer = new byte[4096];
+            int byteRead;
+
+            while ((byteRead = inputStream.read(buffer)) != -1) {
+                fileOutputStream.write(buffer, 0, byteRead);
+            }
+        } finally {
+            inputStream.close();
+            fileOutputStream.close();
+        }
+
+        // Initialize the classifier based on byte code from haarcascade file
+        CascadeClassifier classifier = new CascadeClassifier(cascadeFile.getAbsolutePath());
+        cascadeFile.delete();
+
+        if (classifier.empty())
+            return null;
+        return classifier;
+    }
+}
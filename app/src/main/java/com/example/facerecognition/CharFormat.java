@@ -0,0 +1,79 @@
+package com.example.facerecognition;
+
+/**
+ * Formats numbers into a reused char array, so text drawn on every frame
+ * does not allocate Strings. All of the methods return the position after
+ * the last written character and expect the array to be large enough.
+ */
+public final class CharFormat {
+
+    public static final int MAX_LONG_LENGTH = 20; // "-9223372036854775808"
+    public static final int MAX_TENTHS_LENGTH = MAX_LONG_LENGTH + 1;
+
+    private CharFormat() {
+    }
+
+    /**
+     * Writes a string
+     * @param buf - destination
+     * @param pos - position to start writing at
+     * @param value - the string
+     * @return position after the last written character
+     */
+    public static int append(char[] buf, int pos, String value) {
+        value.getChars(0, value.length(), buf, pos);
+        return pos + value.length();
+    }
+
+    /**
+     * Writes a decimal integer
+     * @param buf - destination
+     * @param pos - position to start writing at
+     * @param value - the number
+     * @return position after the last written character
+     */
+    public static int append(char[] buf, int pos, long value) {
+        if (value < 0) {
+            buf[pos++] = '-';
+            return appendNegated(buf, pos, value);
+        }
+        return appendNegated(buf, pos, -value);
+    }
+
+    /**
+     * Writes a number with one decimal digit, e.g. 123 tenths as "12.3"
+     * @param buf - destination
+     * @param pos - position to start writing at
+     * @param tenths - the number multiplied by ten
+     * @return position after the last written character
+     */
+    public static int appendTenths(char[] buf, int pos, long tenths) {
+        long whole = tenths / 10;
+        int fraction = (int) (tenths % 10);
+        if (tenths < 0) {
+            buf[pos++] = '-';
+            pos = appendNegated(buf, pos, whole);
+            fraction = -fraction;
+        } else {
+            pos = appendNegated(buf, pos, -whole);
+        }
+        buf[pos++] = '.';
+        buf[pos++] = (char) ('0' + fraction);
+        return pos;
+    }
+
+    /**
+     * Writes the digits of -value. Negative numbers are used, because unlike
+     * Long.MIN_VALUE every positive long can be negated.
+     */
+    private static int appendNegated(char[] buf, int pos, long value) {
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10)
+            digits++;
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buf[i] = (char) ('0' - value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+}
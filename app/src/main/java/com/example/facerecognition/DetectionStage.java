@@ -0,0 +1,71 @@
+package com.example.facerecognition;
+
+import com.example.facerecognition.CameraBridgeViewBase.CvCameraViewFrame;
+
+import org.opencv.core.Mat;
+
+/**
+ * FramePipeline stage which hands the gray frames over to a DetectionWorker. The detection
+ * runs on the thread of the worker, so the following stages get the frame right away and
+ * read the latest faces with getFaces(). It passes its input on unchanged.
+ */
+public class DetectionStage implements FrameProcessor {
+
+    private FaceTracker mTracker;
+    private FrameProfiler mProfiler;
+    private volatile DetectionWorker mWorker;
+
+    /**
+     * @param tracker - tracker run by the worker, takes effect when the pipeline is started
+     */
+    public void setTracker(FaceTracker tracker) {
+        mTracker = tracker;
+    }
+
+    /**
+     * @param profiler - profiler the detection latency is recorded into, or null
+     */
+    public void setProfiler(FrameProfiler profiler) {
+        mProfiler = profiler;
+    }
+
+    /**
+     * Copies the faces found on the latest processed frame, none before the pipeline is started
+     * @param faces - the destination, owned by the caller
+     */
+    public void getFaces(FaceRects faces) {
+        DetectionWorker worker = mWorker;
+        if (worker != null)
+            worker.getFaces(faces);
+        else
+            faces.clear();
+    }
+
+    @Override
+    public void onStarted(int width, int height) {
+        if (mTracker == null)
+            return;
+        DetectionWorker worker = new DetectionWorker(mTracker);
+        worker.setProfiler(mProfiler);
+        worker.start();
+        mWorker = worker;
+    }
+
+    @Override
+    public Mat process(CvCameraViewFrame frame, Mat input) {
+        DetectionWorker worker = mWorker;
+        if (worker != null)
+            worker.submit(frame.gray());
+        return input;
+    }
+
+    @Override
+    public void onStopped() {
+        DetectionWorker worker = mWorker;
+        mWorker = null;
+        if (worker != null)
+            worker.stop(); // Detection thread must be finished before the tracker is reset
+        if (mTracker != null)
+            mTracker.reset();
+    }
+}
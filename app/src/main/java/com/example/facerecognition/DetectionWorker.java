@@ -0,0 +1,172 @@
+package com.example.facerecognition;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+
+/**
+ * Runs face detection on its own thread, so the preview can be drawn at camera rate
+ * no matter how long the detection takes.
+ * Frames are handed over with submit() which only copies the gray frame. If the worker
+ * is still busy the pending frame is simply replaced, so the detection always runs on
+ * the latest frame and stale frames are dropped. The most recent result can be copied out
+ * at any time with getFaces(), together with the track ids of the faces.
+ */
+public class DetectionWorker {
+
+    private static final String TAG = "DetectionWorker";
+
+    private final FaceTracker mTracker;
+    private final Object mSyncObject = new Object();
+
+    private Mat mPending = new Mat();
+    private Mat mProcessing = new Mat();
+    private final FaceRects mFaces = new FaceRects(); // Only used by the detecting thread
+    private boolean mHasPending;
+    private boolean mStopThread;
+    private Thread mThread;
+    private volatile FrameProfiler mProfiler;
+
+    private final FaceRects mResult = new FaceRects(); // Guarded by itself
+    private volatile long mDetectedFrames;
+    private volatile long mDroppedFrames;
+
+    /**
+     * @param tracker - detection stage run on the worker thread
+     */
+    public DetectionWorker(FaceTracker tracker) {
+        mTracker = tracker;
+    }
+
+    /**
+     * Starts the worker thread
+     */
+    public void start() {
+        synchronized (mSyncObject) {
+            mStopThread = false;
+            mHasPending = false;
+        }
+        synchronized (mResult) {
+            mResult.clear();
+        }
+        mThread = new Thread(new Worker(), TAG);
+        mThread.start();
+    }
+
+    /**
+     * Stops the worker thread and waits for it to finish
+     */
+    public void stop() {
+        synchronized (mSyncObject) {
+            mStopThread = true;
+            mSyncObject.notify();
+        }
+        try {
+            if (mThread != null)
+                mThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            mThread = null;
+        }
+        mPending.release();
+        mProcessing.release();
+    }
+
+    /**
+     * Hands a frame over to the worker. Must only be called between start() and stop().
+     * @param gray - single channel frame, it is copied so the caller can reuse it
+     */
+    public void submit(Mat gray) {
+        synchronized (mSyncObject) {
+            if (mHasPending)
+                mDroppedFrames++;
+            gray.copyTo(mPending);
+            mHasPending = true;
+            mSyncObject.notify();
+        }
+    }
+
+    /**
+     * @param profiler - profiler the detection latency is recorded into, or null
+     */
+    public void setProfiler(FrameProfiler profiler) {
+        mProfiler = profiler;
+    }
+
+    /**
+     * Copies the faces found on the latest processed frame, without allocating
+     * @param faces - the destination, owned by the caller
+     */
+    public void getFaces(FaceRects faces) {
+        synchronized (mResult) {
+            faces.set(mResult);
+        }
+    }
+
+    /**
+     * @return number of frames that were processed by the detection
+     */
+    public long getDetectedFrames() {
+        return mDetectedFrames;
+    }
+
+    /**
+     * @return number of frames that were replaced by a newer frame before being processed
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * Runs the detection on the calling thread instead of the worker, so every frame is
+     * processed and the result is ready when it returns, e.g. to replay recorded frames
+     * deterministically. Must not be called while the worker thread is running.
+     * @param gray - single channel frame
+     */
+    public void process(Mat gray) {
+        detect(gray);
+    }
+
+    private void detect(Mat gray) {
+        long start = System.nanoTime();
+        mTracker.process(gray, mFaces);
+        synchronized (mResult) {
+            mResult.set(mFaces);
+        }
+        mDetectedFrames++;
+
+        FrameProfiler profiler = mProfiler;
+        if (profiler != null)
+            profiler.record(FrameProfiler.STAGE_DETECT, System.nanoTime() - start);
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            do {
+                synchronized (mSyncObject) {
+                    try {
+                        while (!mHasPending && !mStopThread) {
+                            mSyncObject.wait();
+                        }
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                    if (mStopThread)
+                        break;
+
+                    // Take the latest frame and leave the other buffer for the next submit()
+                    Mat tmp = mProcessing;
+                    mProcessing = mPending;
+                    mPending = tmp;
+                    mHasPending = false;
+                }
+
+                detect(mProcessing);
+            } while (true);
+            Log.d(TAG, "Finish detection thread");
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.facerecognition;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.dnn.Dnn;
+import org.opencv.dnn.Net;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FaceEmbedder running a face recognition network with the OpenCV dnn module, e.g. an
+ * ONNX export of MobileFaceNet or the OpenFace Torch/Caffe models. The models are not
+ * shipped with the app, they have to be copied to the device first.
+ * Several faces can be embedded with a single forward pass of a batch, which needs a model
+ * exported with a dynamic batch dimension.
+ * Instances are not thread safe.
+ */
+public class DnnFaceEmbedder implements FaceEmbedder {
+
+    private final Net mNet;
+    private final int mDimension;
+    private final Size mInputSize;
+    private final double mScale;
+    private final Scalar mMean;
+    private final boolean mSwapRB;
+    private final Mat mColorFace = new Mat();
+    private final List<Mat> mColorFaces = new ArrayList<Mat>();
+    private float[] mOutput;
+
+    /**
+     * @param net - loaded network, e.g. from Dnn.readNetFromONNX()
+     * @param dimension - length of the output of the network
+     * @param inputSize - size of the input image of the network, e.g. 112x112
+     * @param scale - multiplier of the pixel values, e.g. 1 / 255.0
+     * @param mean - values subtracted from the pixels before scaling, in RGB order
+     * @param swapRB - whether the network expects RGB instead of BGR input
+     */
+    public DnnFaceEmbedder(Net net, int dimension, Size inputSize, double scale, Scalar mean, boolean swapRB) {
+        mNet = net;
+        mDimension = dimension;
+        mInputSize = inputSize;
+        mScale = scale;
+        mMean = mean;
+        mSwapRB = swapRB;
+        mOutput = new float[dimension];
+    }
+
+    /**
+     * Loads an ONNX model with the usual MobileFaceNet preprocessing: 112x112 RGB input
+     * scaled to [-1, 1], producing 128 values
+     * @param onnxFile - path of the model
+     * @return the embedder
+     */
+    public static DnnFaceEmbedder fromOnnx(String onnxFile) {
+        return new DnnFaceEmbedder(Dnn.readNetFromONNX(onnxFile), 128, new Size(112, 112),
+                1 / 127.5, new Scalar(127.5, 127.5, 127.5), true);
+    }
+
+    @Override
+    public int getDimension() {
+        return mDimension;
+    }
+
+    @Override
+    public void embed(Mat face, float[] embedding, int offset) {
+        toColor(face, mColorFace);
+
+        // The frames are RGB already, so swapping is needed when the network expects BGR
+        Mat blob = Dnn.blobFromImage(mColorFace, mScale, mInputSize, mMean, !mSwapRB, false, CvType.CV_32F);
+        mNet.setInput(blob);
+        Mat output = mNet.forward();
+        output.reshape(1, 1).get(0, 0, mOutput);
+        output.release();
+        blob.release();
+
+        System.arraycopy(mOutput, 0, embedding, offset, mDimension);
+        FaceGallery.normalize(embedding, offset, mDimension);
+    }
+
+    @Override
+    public void embed(List<Mat> faces, int count, float[] embeddings, int offset) {
+        if (count == 0)
+            return;
+        if (count == 1) {
+            embed(faces.get(0), embeddings, offset);
+            return;
+        }
+
+        while (mColorFaces.size() < count)
+            mColorFaces.add(new Mat());
+        for (int i = 0; i < count; i++)
+            toColor(faces.get(i), mColorFaces.get(i));
+
+        // blobFromImages() takes the whole list, so a view of the used part is passed
+        Mat blob = Dnn.blobFromImages(mColorFaces.subList(0, count), mScale, mInputSize, mMean, !mSwapRB, false, CvType.CV_32F);
+        mNet.setInput(blob);
+        Mat output = mNet.forward();
+        if (mOutput.length < count * mDimension)
+            mOutput = new float[count * mDimension];
+        output.reshape(1, 1).get(0, 0, mOutput);
+        output.release();
+        blob.release();
+
+        System.arraycopy(mOutput, 0, embeddings, offset, count * mDimension);
+        for (int i = 0; i < count; i++)
+            FaceGallery.normalize(embeddings, offset + i * mDimension, mDimension);
+    }
+
+    private static void toColor(Mat face, Mat dst) {
+        // The network expects 3 channels, frames are RGBA or gray
+        if (face.channels() == 1) {
+            Imgproc.cvtColor(face, dst, Imgproc.COLOR_GRAY2RGB);
+        } else {
+            Imgproc.cvtColor(face, dst, Imgproc.COLOR_RGBA2RGB);
+        }
+    }
+
+    @Override
+    public void release() {
+        for (Mat mat : mColorFaces)
+            mat.release();
+        mColorFaces.clear();
+        mColorFace.release();
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.facerecognition;
+
+/**
+ * The math CameraBridgeViewBase does to draw a frame: mapping the display rotation to the
+ * screen orientation, and the orientation to the mirroring, rotation and scale of the frame.
+ * It only uses plain Java, so it can also be benchmarked on the JVM. The matrix is written in
+ * the layout of android.graphics.Matrix.setValues(), and the constants have the values of
+ * Surface.ROTATION_* and ActivityInfo.SCREEN_ORIENTATION_*.
+ */
+public final class DrawTransform {
+
+    public static final int ROTATION_0 = 0;
+    public static final int ROTATION_90 = 1;
+    public static final int ROTATION_180 = 2;
+    public static final int ROTATION_270 = 3;
+
+    public static final int SCREEN_ORIENTATION_LANDSCAPE = 0;
+    public static final int SCREEN_ORIENTATION_PORTRAIT = 1;
+    public static final int SCREEN_ORIENTATION_REVERSE_LANDSCAPE = 8;
+    public static final int SCREEN_ORIENTATION_REVERSE_PORTRAIT = 9;
+
+    public static final int MATRIX_SIZE = 9;
+
+    private DrawTransform() {
+    }
+
+    /**
+     * Determine current orientation of the device.
+     * Source: http://stackoverflow.com/a/10383164/2175837
+     * @param rotation - rotation of the display, one of the ROTATION_* values
+     * @param width - width of the display in pixels
+     * @param height - height of the display in pixels
+     * @return one of the SCREEN_ORIENTATION_* values
+     */
+    public static int screenOrientation(int rotation, int width, int height) {
+        // if the device's natural orientation is portrait:
+        if ((rotation == ROTATION_0 || rotation == ROTATION_180) && height > width || (rotation == ROTATION_90 || rotation == ROTATION_270) && width > height) {
+            switch (rotation) {
+                case ROTATION_90:
+                    return SCREEN_ORIENTATION_LANDSCAPE;
+                case ROTATION_180:
+                    return SCREEN_ORIENTATION_REVERSE_PORTRAIT;
+                case ROTATION_270:
+                    return SCREEN_ORIENTATION_REVERSE_LANDSCAPE;
+                default:
+                    return SCREEN_ORIENTATION_PORTRAIT;
+            }
+        } else { // If the device's natural orientation is landscape or if the device is square:
+            switch (rotation) {
+                case ROTATION_90:
+                    return SCREEN_ORIENTATION_PORTRAIT;
+                case ROTATION_180:
+                    return SCREEN_ORIENTATION_REVERSE_LANDSCAPE;
+                case ROTATION_270:
+                    return SCREEN_ORIENTATION_REVERSE_PORTRAIT;
+                default:
+                    return SCREEN_ORIENTATION_LANDSCAPE;
+            }
+        }
+    }
+
+    /**
+     * Computes the transformation from the frame to the canvas. The mirroring and the rotation
+     * are combined into a single matrix, so the frame pixels are never transformed.
+     * @param orientation - the current orientation of the device
+     * @param frontCamera - true if the frame is from the front camera
+     * @param mirrorOnly - only mirror the frame, as the emulator always reports portrait
+     * @param bitmapWidth - width of the frame
+     * @param bitmapHeight - height of the frame
+     * @param canvasWidth - width of the canvas
+     * @param canvasHeight - height of the canvas
+     * @param matrix - receives the MATRIX_SIZE values of the transformation
+     * @return the scale from the rotated frame to the canvas
+     */
+    public static float computeMatrix(int orientation, boolean frontCamera, boolean mirrorOnly,
+                                      int bitmapWidth, int bitmapHeight, int canvasWidth, int canvasHeight,
+                                      float[] matrix) {
+        int degrees = 0;
+        float flipX = 1, flipY = 1;
+
+        if (mirrorOnly) {
+            flipX = -1; // Flip along y-axis
+        } else {
+            switch (orientation) {
+                case SCREEN_ORIENTATION_PORTRAIT:
+                    degrees = -90;
+                    break;
+                case SCREEN_ORIENTATION_LANDSCAPE:
+                    break;
+                case SCREEN_ORIENTATION_REVERSE_PORTRAIT:
+                    degrees = 90;
+                    break;
+                case SCREEN_ORIENTATION_REVERSE_LANDSCAPE:
+                    degrees = 180;
+                    break;
+            }
+
+            // Flip image to get mirror effect
+            switch (orientation) {
+                case SCREEN_ORIENTATION_PORTRAIT:
+                case SCREEN_ORIENTATION_REVERSE_PORTRAIT:
+                    flipY = -1; // Flip along x-axis
+                    if (!frontCamera)
+                        flipX = -1; // Flip along both axis
+                    break;
+                case SCREEN_ORIENTATION_LANDSCAPE:
+                case SCREEN_ORIENTATION_REVERSE_LANDSCAPE:
+                    if (frontCamera)
+                        flipX = -1; // Flip along y-axis
+                    break;
+            }
+        }
+
+        // Size of the bitmap once it is rotated
+        boolean swapSides = degrees == 90 || degrees == -90;
+        int outputWidth = swapSides ? bitmapHeight : bitmapWidth;
+        int outputHeight = swapSides ? bitmapWidth : bitmapHeight;
+
+        float scale;
+        if (outputWidth <= canvasWidth)
+            scale = getRatio(outputWidth, outputHeight, canvasWidth, canvasHeight);
+        else
+            scale = getRatio(canvasWidth, canvasHeight, outputWidth, outputHeight);
+
+        // Same as Matrix.reset(), postScale(), postRotate(), postTranslate() and postScale()
+        float px = bitmapWidth / 2f, py = bitmapHeight / 2f;
+        float[] m = matrix;
+        m[0] = 1; m[1] = 0; m[2] = 0;
+        m[3] = 0; m[4] = 1; m[5] = 0;
+        m[6] = 0; m[7] = 0; m[8] = 1;
+        postScale(m, flipX, flipY, px, py);
+        postRotate(m, degrees, px, py);
+        m[2] += (outputWidth - bitmapWidth) / 2f;
+        m[5] += (outputHeight - bitmapHeight) / 2f;
+        if (scale != 0)
+            postScale(m, scale, scale, 0, 0);
+        return scale;
+    }
+
+    private static float getRatio(int widthSource, int heightSource, int widthTarget, int heightTarget) {
+        if (widthTarget <= heightTarget) {
+            return (float) heightTarget / (float) heightSource;
+        } else {
+            return (float) widthTarget / (float) widthSource;
+        }
+    }
+
+    private static void postScale(float[] m, float sx, float sy, float px, float py) {
+        m[0] *= sx; m[1] *= sx; m[2] = (m[2] - px) * sx + px;
+        m[3] *= sy; m[4] *= sy; m[5] = (m[5] - py) * sy + py;
+    }
+
+    // Only multiples of 90 degrees are used, so the sine and cosine are exact
+    private static void postRotate(float[] m, int degrees, float px, float py) {
+        float cos, sin;
+        switch ((degrees % 360 + 360) % 360) {
+            case 90:
+                cos = 0; sin = 1;
+                break;
+            case 180:
+                cos = -1; sin = 0;
+                break;
+            case 270:
+                cos = 0; sin = -1;
+                break;
+            default:
+                cos = 1; sin = 0;
+                break;
+        }
+        float a = m[0], b = m[1], c = m[2] - px;
+        float d = m[3], e = m[4], f = m[5] - py;
+        m[0] = cos * a - sin * d;
+        m[1] = cos * b - sin * e;
+        m[2] = cos * c - sin * f + px;
+        m[3] = sin * a + cos * d;
+        m[4] = sin * b + cos * e;
+        m[5] = sin * c + cos * f + py;
+    }
+}
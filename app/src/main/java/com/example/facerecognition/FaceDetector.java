@@ -0,0 +1,170 @@
+package com.example.facerecognition;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.CascadeClassifier;
+
+/**
+ * Face detection stage which runs the Haar cascade on a downscaled copy of the
+ * grayscale frame and maps the found faces back to the frame coordinates.
+ * Because the cascade always sees a frame of roughly the same width, the cost per
+ * frame is bounded no matter which preview size the camera ends up using.
+ * Instances are not thread safe, as the downscaled frame is reused between calls.
+ */
+public class FaceDetector {
+
+    public static final int DEFAULT_DETECTION_WIDTH = 320;
+    public static final float DEFAULT_MIN_FACE_SIZE = 0.1f;
+    public static final float DEFAULT_MAX_FACE_SIZE = 1.0f;
+
+    private static final double SCALE_FACTOR = 1.1;
+    private static final int MIN_NEIGHBORS = 3;
+
+    private final CascadeClassifier mClassifier;
+    private final CascadeGroup mCascades;
+    private final Size mWindowSize;
+    private final Mat mSmallFrame = new Mat();
+    private final FaceRects mRects = new FaceRects();
+    private final Size mSmallSize = new Size();
+    private final Size mMinSize = new Size();
+    private final Size mMaxSize = new Size();
+
+    private int mDetectionWidth = DEFAULT_DETECTION_WIDTH;
+    private float mMinFaceSize = DEFAULT_MIN_FACE_SIZE;
+    private float mMaxFaceSize = DEFAULT_MAX_FACE_SIZE;
+
+    /**
+     * @param classifier - loaded cascade used for detection
+     */
+    public FaceDetector(CascadeClassifier classifier) {
+        mClassifier = classifier;
+        mCascades = null;
+        mWindowSize = classifier.getOriginalWindowSize();
+    }
+
+    /**
+     * @param cascades - loaded cascades which run concurrently, their results are merged
+     */
+    public FaceDetector(CascadeGroup cascades) {
+        mClassifier = null;
+        mCascades = cascades;
+        mWindowSize = cascades.getOriginalWindowSize();
+    }
+
+    /**
+     * Sets the width of the frame the cascade runs on. Frames narrower than
+     * this are processed at their own size.
+     * @param width - detection width in pixels, 0 disables downscaling
+     */
+    public void setDetectionWidth(int width) {
+        mDetectionWidth = width;
+    }
+
+    public int getDetectionWidth() {
+        return mDetectionWidth;
+    }
+
+    /**
+     * Sets the range of face sizes that will be searched for
+     * @param minFaceSize - minimal face size relative to the shorter side of the frame
+     * @param maxFaceSize - maximal face size relative to the shorter side of the frame
+     */
+    public void setFaceSize(float minFaceSize, float maxFaceSize) {
+        mMinFaceSize = minFaceSize;
+        mMaxFaceSize = maxFaceSize;
+    }
+
+    /**
+     * Returns the ratio between the frame and the image the cascade runs on
+     * @param frameWidth - width of the frame
+     * @return scale used to map detections back to the frame
+     */
+    public double getScale(int frameWidth) {
+        if (mDetectionWidth <= 0 || frameWidth <= mDetectionWidth)
+            return 1.0;
+        return (double) frameWidth / mDetectionWidth;
+    }
+
+    /**
+     * Hands over where the faces are expected on the next call. The plain detector always
+     * scans the whole frame, so it ignores the hint.
+     * @param regions - faces in the coordinates of the image the cascade runs on
+     * @param frames - number of frames since the previous call
+     */
+    public void setRegions(FaceRects regions, int frames) {
+    }
+
+    /**
+     * Detects faces on the gray frame
+     * @param gray - single channel frame
+     * @param faces - found faces in the frame coordinates
+     */
+    public void detect(Mat gray, MatOfRect faces) {
+        double scale = getScale(gray.cols());
+
+        Mat image = gray;
+        if (scale != 1.0) {
+            mSmallSize.width = mDetectionWidth;
+            mSmallSize.height = Math.round(gray.rows() / scale);
+            Imgproc.resize(gray, mSmallFrame, mSmallSize, 0, 0, Imgproc.INTER_AREA);
+            image = mSmallFrame;
+        }
+
+        detectFaces(image, faces);
+
+        if (scale != 1.0 && !faces.empty()) {
+            // Back-project into the frame coordinates
+            mRects.fill(faces);
+            mRects.scale(scale);
+            mRects.copyTo(faces);
+        }
+    }
+
+    /**
+     * Detects faces on the whole image the cascade runs on.
+     * Subclasses can override this in order to restrict the search.
+     * @param image - downscaled single channel frame
+     * @param faces - found faces in the image coordinates
+     */
+    protected void detectFaces(Mat image, MatOfRect faces) {
+        int shorterSide = Math.min(image.cols(), image.rows());
+        double minSide = Math.max(mMinFaceSize * shorterSide, mWindowSize.width);
+        double maxSide = Math.max(mMaxFaceSize * shorterSide, minSide);
+        mMinSize.width = mMinSize.height = minSide;
+        mMaxSize.width = mMaxSize.height = maxSide;
+
+        detectMultiScale(image, faces, mMinSize, mMaxSize);
+    }
+
+    /**
+     * Runs the cascade on the image
+     * @param image - single channel image
+     * @param faces - found faces in the image coordinates
+     * @param minSize - minimal face size
+     * @param maxSize - maximal face size
+     */
+    protected void detectMultiScale(Mat image, MatOfRect faces, Size minSize, Size maxSize) {
+        if (mCascades != null)
+            mCascades.detectMultiScale(image, faces, minSize, maxSize);
+        else
+            mClassifier.detectMultiScale(image, faces, SCALE_FACTOR, MIN_NEIGHBORS, 0, minSize, maxSize);
+    }
+
+    /**
+     * @return the size of the smallest face the cascade can find
+     */
+    protected Size getWindowSize() {
+        return mWindowSize;
+    }
+
+    /**
+     * Releases the native memory held by the detector
+     */
+    public void release() {
+        mSmallFrame.release();
+        if (mCascades != null)
+            mCascades.release();
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.facerecognition;
+
+import org.opencv.core.Mat;
+
+import java.util.List;
+
+/**
+ * Turns a face crop into a fixed-length, L2 normalized feature vector, so that faces of
+ * the same person end up close to each other and can be matched with a FaceGallery.
+ */
+public interface FaceEmbedder {
+
+    /**
+     * @return length of the embeddings
+     */
+    public int getDimension();
+
+    /**
+     * Computes the embedding of a face
+     * @param face - gray or RGBA crop of the face
+     * @param embedding - destination
+     * @param offset - position of the embedding in the destination
+     */
+    public void embed(Mat face, float[] embedding, int offset);
+
+    /**
+     * Computes the embeddings of several faces, in a single pass where the embedder supports it
+     * @param faces - gray or RGBA crops of the faces
+     * @param count - number of faces from the start of the list to be embedded
+     * @param embeddings - destination, the embeddings are stored one after another
+     * @param offset - position of the first embedding in the destination
+     */
+    public void embed(List<Mat> faces, int count, float[] embeddings, int offset);
+
+    /**
+     * Releases the native memory held by the embedder
+     */
+    public void release();
+}
@@ -0,0 +1,193 @@
+package com.example.facerecognition;
+
+/**
+ * In-memory gallery of enrolled face embeddings. All of the embeddings are stored one after
+ * another in a single float array with the identity ids in a parallel int array, so there is
+ * no object per face and a search is a sequential scan over contiguous memory.
+ * The embeddings are L2 normalized, so the dot product is the cosine similarity.
+ * A person can be enrolled with several embeddings under the same id.
+ * Instances are not thread safe.
+ */
+public class FaceGallery {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int mDimension;
+    private float[] mEmbeddings;
+    private int[] mIds;
+    private int mCount;
+
+    /**
+     * Result of a search, reused by the caller
+     */
+    public static class Match {
+        public int id;
+        public int index;
+        public float similarity;
+    }
+
+    /**
+     * @param dimension - length of the embeddings
+     */
+    public FaceGallery(int dimension) {
+        this(dimension, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param dimension - length of the embeddings
+     * @param capacity - number of embeddings that fit in without growing
+     */
+    public FaceGallery(int dimension, int capacity) {
+        mDimension = dimension;
+        mEmbeddings = new float[dimension * Math.max(capacity, 1)];
+        mIds = new int[Math.max(capacity, 1)];
+    }
+
+    public int getDimension() {
+        return mDimension;
+    }
+
+    /**
+     * @return number of embeddings
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @param index - index of the embedding
+     * @return id the embedding was enrolled with
+     */
+    public int getId(int index) {
+        return mIds[index];
+    }
+
+    /**
+     * Adds an embedding, it is normalized in the gallery
+     * @param id - identity of the face
+     * @param embedding - the embedding
+     * @param offset - position of the embedding in the array
+     * @return index of the embedding
+     */
+    public int add(int id, float[] embedding, int offset) {
+        if (mCount == mIds.length) {
+            int capacity = mIds.length * 2;
+            float[] embeddings = new float[capacity * mDimension];
+            System.arraycopy(mEmbeddings, 0, embeddings, 0, mCount * mDimension);
+            int[] ids = new int[capacity];
+            System.arraycopy(mIds, 0, ids, 0, mCount);
+            mEmbeddings = embeddings;
+            mIds = ids;
+        }
+
+        int index = mCount++;
+        System.arraycopy(embedding, offset, mEmbeddings, index * mDimension, mDimension);
+        normalize(mEmbeddings, index * mDimension, mDimension);
+        mIds[index] = id;
+        return index;
+    }
+
+    /**
+     * Removes all of the embeddings of an identity. The last embeddings are moved into
+     * the freed slots, so the indexes of the other embeddings can change.
+     * @param id - identity to be removed
+     * @return number of removed embeddings
+     */
+    public int remove(int id) {
+        int removed = 0;
+        for (int i = mCount - 1; i >= 0; i--) {
+            if (mIds[i] == id) {
+                int last = --mCount;
+                if (i != last) {
+                    System.arraycopy(mEmbeddings, last * mDimension, mEmbeddings, i * mDimension, mDimension);
+                    mIds[i] = mIds[last];
+                }
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        mCount = 0;
+    }
+
+    /**
+     * Finds the most similar embedding by scanning all of them
+     * @param query - normalized embedding of the face
+     * @param offset - position of the embedding in the array
+     * @param match - receives the best match
+     * @return false if the gallery is empty
+     */
+    public boolean findNearest(float[] query, int offset, Match match) {
+        if (mCount == 0)
+            return false;
+
+        int best = 0;
+        float bestSimilarity = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < mCount; i++) {
+            float similarity = dot(mEmbeddings, i * mDimension, query, offset, mDimension);
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = i;
+            }
+        }
+
+        match.id = mIds[best];
+        match.index = best;
+        match.similarity = bestSimilarity;
+        return true;
+    }
+
+    /**
+     * @param index - index of the embedding
+     * @param query - normalized embedding of the face
+     * @param offset - position of the embedding in the array
+     * @return cosine similarity of the two embeddings
+     */
+    public float similarity(int index, float[] query, int offset) {
+        return dot(mEmbeddings, index * mDimension, query, offset, mDimension);
+    }
+
+    /**
+     * Copies an embedding out of the gallery
+     * @param index - index of the embedding
+     * @param dst - destination
+     * @param offset - position in the destination
+     */
+    public void getEmbedding(int index, float[] dst, int offset) {
+        System.arraycopy(mEmbeddings, index * mDimension, dst, offset, mDimension);
+    }
+
+    /**
+     * Dot product, with independent accumulators so the additions do not wait for each other
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++)
+            s0 += a[aOffset + i] * b[bOffset + i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Scales a vector to unit length in place
+     * @param v - array with the vector
+     * @param offset - position of the vector in the array
+     * @param length - length of the vector
+     */
+    public static void normalize(float[] v, int offset, int length) {
+        float norm = (float) Math.sqrt(dot(v, offset, v, offset, length));
+        if (norm == 0)
+            return;
+        float scale = 1 / norm;
+        for (int i = offset; i < offset + length; i++)
+            v[i] *= scale;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.facerecognition;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+/**
+ * Draws the identities of a RecognitionStage above the faces. The labels are drawn on the
+ * canvas instead of into the frame, so they stay readable while the view rotates and
+ * mirrors the frame. The text is formatted into a reused buffer, so drawing does not
+ * allocate.
+ */
+public class FaceLabelOverlay implements CameraBridgeViewBase.CanvasOverlay {
+
+    private static final String PERSON_LABEL = "Person ";
+    private static final String UNKNOWN_LABEL = "Unknown";
+    private static final int MAX_TEXT_LENGTH = PERSON_LABEL.length() + CharFormat.MAX_LONG_LENGTH;
+
+    private final RecognitionStage mRecognition;
+    private final FaceRects mFaces = new FaceRects();
+    private int[] mIdentities = new int[FaceRects.DEFAULT_CAPACITY];
+    private final RectF mRect = new RectF();
+    private final char[] mText = new char[MAX_TEXT_LENGTH];
+    private final Paint mKnownPaint;
+    private final Paint mUnknownPaint;
+
+    /**
+     * @param recognition - stage the faces and identities are taken from
+     */
+    public FaceLabelOverlay(RecognitionStage recognition) {
+        mRecognition = recognition;
+        mKnownPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mKnownPaint.setColor(Color.GREEN);
+        mKnownPaint.setTextSize(40);
+        mUnknownPaint = new Paint(mKnownPaint);
+        mUnknownPaint.setColor(Color.RED);
+    }
+
+    @Override
+    public void draw(Canvas canvas, Matrix frameToCanvas) {
+        mIdentities = mRecognition.getResults(mFaces, mIdentities);
+        for (int i = 0; i < mFaces.size(); i++) {
+            mRect.set(mFaces.getX(i), mFaces.getY(i),
+                    mFaces.getX(i) + mFaces.getWidth(i), mFaces.getY(i) + mFaces.getHeight(i));
+            frameToCanvas.mapRect(mRect); // Sorted again, whichever way the frame is rotated
+
+            int length;
+            Paint paint;
+            if (mIdentities[i] == FaceRecognizer.UNKNOWN) {
+                length = CharFormat.append(mText, 0, UNKNOWN_LABEL);
+                paint = mUnknownPaint;
+            } else {
+                length = CharFormat.append(mText, 0, PERSON_LABEL);
+                length = CharFormat.append(mText, length, mIdentities[i]);
+                paint = mKnownPaint;
+            }
+            canvas.drawText(mText, 0, length, mRect.left, mRect.top - paint.descent(), paint);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.facerecognition;
+
+import com.example.facerecognition.CameraBridgeViewBase.CvCameraViewFrame;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * FramePipeline stage which draws the latest faces of a DetectionStage on the color frame.
+ * The faces were found on the same unrotated frame, the view mirrors and rotates both while
+ * drawing.
+ */
+public class FaceOverlayStage implements FrameProcessor {
+
+    private static final Scalar FACE_RECT_COLOR = new Scalar(255, 0, 0);
+
+    private final DetectionStage mDetection;
+    // Reused for drawing the faces of every frame
+    private final FaceRects mFaces = new FaceRects();
+    private final Point mTopLeft = new Point();
+    private final Point mBottomRight = new Point();
+
+    /**
+     * @param detection - stage the faces are taken from
+     */
+    public FaceOverlayStage(DetectionStage detection) {
+        mDetection = detection;
+    }
+
+    @Override
+    public void onStarted(int width, int height) {
+    }
+
+    @Override
+    public Mat process(CvCameraViewFrame frame, Mat input) {
+        Mat rgba = input != null ? input : frame.rgba();
+        mDetection.getFaces(mFaces);
+        for (int i = 0; i < mFaces.size(); i++) {
+            mTopLeft.x = mFaces.getX(i);
+            mTopLeft.y = mFaces.getY(i);
+            mBottomRight.x = mTopLeft.x + mFaces.getWidth(i);
+            mBottomRight.y = mTopLeft.y + mFaces.getHeight(i);
+            Imgproc.rectangle(rgba, mTopLeft, mBottomRight, FACE_RECT_COLOR);
+        }
+        return rgba;
+    }
+
+    @Override
+    public void onStopped() {
+        mFaces.clear();
+    }
+}
@@ -0,0 +1,372 @@
+package com.example.facerecognition;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recognizes detected faces by embedding their crops and searching the gallery.
+ * A face is only recognized when its similarity to the best match reaches the threshold,
+ * which depends on the embedder, e.g. around 0.5 for networks and higher for HOG.
+ * Large galleries can be searched through an approximate HnswIndex instead of the full scan.
+ * A gallery saved with save() can be searched as well, next to the faces enrolled since it was
+ * loaded. With an index, the stored faces are indexed too and only the index is searched.
+ * All of the faces of a frame can be recognized at once with recognizeAll(), which lets a
+ * DnnFaceEmbedder embed them with a single forward pass.
+ * With a RecognitionCache, tracked faces are only embedded when they appear and when their
+ * result is due for verification, so the cost follows the new faces and not the frame rate.
+ * Faces are clipped to the frame, a face entirely outside of it is not embedded and stays UNKNOWN.
+ * Instances are not thread safe.
+ */
+public class FaceRecognizer {
+
+    public static final int UNKNOWN = -1;
+    public static final float DEFAULT_THRESHOLD = 0.5f;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 8;
+
+    private final FaceEmbedder mEmbedder;
+    private final FaceGallery mGallery;
+    private float[] mEmbedding;
+    private final List<Mat> mCrops = new ArrayList<Mat>();
+    private final FaceGallery.Match mMatch = new FaceGallery.Match();
+    private final Rect mClip = new Rect();
+    private final int[] mLabel = new int[1];
+    private final float[] mSimilarity = new float[1];
+    private HnswIndex mIndex;
+    private MappedFaceGallery mStored;
+    private RecognitionCache mCache;
+    private int[] mMisses = new int[FaceRects.DEFAULT_CAPACITY];
+    private float mThreshold = DEFAULT_THRESHOLD;
+    private int mMaxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private float mLastSimilarity;
+    private boolean mModified;
+
+    /**
+     * @param embedder - produces the embeddings
+     * @param gallery - enrolled faces, of the dimension of the embedder
+     */
+    public FaceRecognizer(FaceEmbedder embedder, FaceGallery gallery) {
+        if (embedder.getDimension() != gallery.getDimension())
+            throw new IllegalArgumentException("Embedder and gallery dimensions differ");
+        mEmbedder = embedder;
+        mGallery = gallery;
+        mEmbedding = new float[embedder.getDimension()];
+    }
+
+    /**
+     * @param threshold - smallest cosine similarity of a recognized face
+     */
+    public void setThreshold(float threshold) {
+        mThreshold = threshold;
+    }
+
+    /**
+     * Limits the number of faces recognizeAll() embeds in one pass, which bounds the memory
+     * of the batch and the latency of a single forward pass in crowded scenes
+     * @param maxBatchSize - largest number of faces embedded at once
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        mMaxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    public FaceGallery getGallery() {
+        return mGallery;
+    }
+
+    public FaceEmbedder getEmbedder() {
+        return mEmbedder;
+    }
+
+    /**
+     * Searches the faces with an approximate index instead of scanning the whole gallery.
+     * The faces already in the galleries are added to the index, the faces enrolled or removed
+     * from now on are added to or removed from both.
+     * @param index - empty index of the dimension of the embedder, or null to scan the galleries
+     */
+    public void setIndex(HnswIndex index) {
+        if (index != null && index.getDimension() != mGallery.getDimension())
+            throw new IllegalArgumentException("Index and gallery dimensions differ");
+        if (index != null && index.size() != 0)
+            throw new IllegalArgumentException("Index is not empty");
+        mIndex = index;
+        if (index == null)
+            return;
+        if (mStored != null) {
+            for (int i = 0; i < mStored.size(); i++) {
+                mStored.getEmbedding(i, mEmbedding, 0);
+                index.add(mStored.getId(i), mEmbedding, 0);
+            }
+        }
+        for (int i = 0; i < mGallery.size(); i++) {
+            mGallery.getEmbedding(i, mEmbedding, 0);
+            index.add(mGallery.getId(i), mEmbedding, 0);
+        }
+    }
+
+    /**
+     * Searches a stored gallery in addition to the in-memory one. New faces are still enrolled
+     * into the in-memory gallery. It has to be set before the index, which then covers it.
+     * @param stored - mapped gallery of the dimension of the embedder, or null
+     */
+    public void setStoredGallery(MappedFaceGallery stored) {
+        if (stored != null && stored.getDimension() != mGallery.getDimension())
+            throw new IllegalArgumentException("Stored and in-memory gallery dimensions differ");
+        if (mIndex != null)
+            throw new IllegalStateException("The stored gallery has to be set before the index");
+        mStored = stored;
+    }
+
+    /**
+     * Writes the stored and the in-memory gallery into a file, which can be opened with
+     * MappedFaceGallery.open() and passed to setStoredGallery() on the next start. Nothing is
+     * written if no face was enrolled or removed since the galleries were set.
+     * @param file - destination, replaced if it exists
+     * @return false if nothing had to be written
+     * @throws IOException if the file cannot be written
+     */
+    public boolean save(File file) throws IOException {
+        if (!mModified)
+            return false;
+        FaceGallery all = mGallery;
+        if (mStored != null && mStored.size() > 0) {
+            all = new FaceGallery(mGallery.getDimension(), mStored.size() + mGallery.size());
+            mStored.copyTo(all);
+            for (int i = 0; i < mGallery.size(); i++) {
+                mGallery.getEmbedding(i, mEmbedding, 0);
+                all.add(mGallery.getId(i), mEmbedding, 0);
+            }
+        }
+        MappedFaceGallery.write(all, file);
+        mModified = false;
+        return true;
+    }
+
+    /**
+     * Reuses the results of tracked faces, faces without a track id are always recognized
+     * @param cache - cache of the dimension of the embedder, or null
+     */
+    public void setCache(RecognitionCache cache) {
+        if (cache != null && cache.getDimension() != mGallery.getDimension())
+            throw new IllegalArgumentException("Cache and gallery dimensions differ");
+        mCache = cache;
+    }
+
+    /**
+     * Adds a face to the gallery
+     * @param id - identity of the face
+     * @param frame - gray or RGBA frame
+     * @param faces - detected faces in the frame coordinates
+     * @param face - index of the face to be enrolled
+     * @return false if the face is outside of the frame and was not enrolled
+     */
+    public boolean enroll(int id, Mat frame, FaceRects faces, int face) {
+        if (!embed(frame, faces, face))
+            return false;
+        mGallery.add(id, mEmbedding, 0);
+        if (mIndex != null)
+            mIndex.add(id, mEmbedding, 0);
+        mModified = true;
+        if (mCache != null && faces.getId(face) != FaceRects.NO_ID)
+            mCache.invalidate(faces.getId(face));
+        return true;
+    }
+
+    /**
+     * Removes all of the faces of a person from the galleries and the index. The stored gallery
+     * is read-only, so if it holds the person it is copied into the in-memory one first.
+     * @param id - identity of the person
+     * @return number of removed faces
+     */
+    public int remove(int id) {
+        if (mStored != null && contains(mStored, id)) {
+            mStored.copyTo(mGallery); // Already in the index
+            mStored = null;
+        }
+        int removed = mGallery.remove(id);
+        if (mIndex != null)
+            mIndex.remove(id);
+        if (removed > 0)
+            mModified = true;
+        // Tracks recognized as the person must not keep the identity
+        if (mCache != null && removed > 0)
+            mCache.clear();
+        return removed;
+    }
+
+    private static boolean contains(MappedFaceGallery gallery, int id) {
+        for (int i = 0; i < gallery.size(); i++) {
+            if (gallery.getId(i) == id)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return an id larger than any id in the galleries, for enrolling a new person
+     */
+    public int nextId() {
+        int max = UNKNOWN;
+        for (int i = 0; i < mGallery.size(); i++)
+            max = Math.max(max, mGallery.getId(i));
+        if (mStored != null) {
+            for (int i = 0; i < mStored.size(); i++)
+                max = Math.max(max, mStored.getId(i));
+        }
+        return max + 1;
+    }
+
+    /**
+     * Recognizes a face
+     * @param frame - gray or RGBA frame
+     * @param faces - detected faces in the frame coordinates
+     * @param face - index of the face to be recognized
+     * @return id of the recognized person, or UNKNOWN
+     */
+    public int recognize(Mat frame, FaceRects faces, int face) {
+        long now = System.nanoTime();
+        int cached = lookup(faces, face, now);
+        if (cached >= 0) {
+            mLastSimilarity = mCache.getSimilarity(cached);
+            return mCache.getIdentity(cached);
+        }
+
+        if (!embed(frame, faces, face)) {
+            mLastSimilarity = 0;
+            return UNKNOWN;
+        }
+        int id = match(mEmbedding, 0);
+        store(faces, face, id, mEmbedding, 0, now);
+        return id;
+    }
+
+    /**
+     * Recognizes all of the faces of a frame, embedding the ones not answered by the cache
+     * in batches of at most the max batch size
+     * @param frame - gray or RGBA frame
+     * @param faces - detected faces in the frame coordinates
+     * @param ids - receives the id of the recognized person or UNKNOWN for every face
+     * @param similarities - receives the similarity of the best match for every face, or null
+     */
+    public void recognizeAll(Mat frame, FaceRects faces, int[] ids, float[] similarities) {
+        long now = System.nanoTime();
+        if (mMisses.length < faces.size())
+            mMisses = new int[faces.size()];
+        int count = 0;
+        for (int i = 0; i < faces.size(); i++) {
+            int cached = lookup(faces, i, now);
+            if (cached >= 0) {
+                ids[i] = mCache.getIdentity(cached);
+                if (similarities != null)
+                    similarities[i] = mCache.getSimilarity(cached);
+            } else if (faces.clip(i, frame.cols(), frame.rows(), mClip)) {
+                mMisses[count++] = i;
+            } else {
+                // Outside of the frame, it is embedded again once it is back
+                ids[i] = UNKNOWN;
+                if (similarities != null)
+                    similarities[i] = 0;
+            }
+        }
+        if (count == 0)
+            return;
+
+        int dimension = mEmbedder.getDimension();
+        int batchSize = Math.min(count, mMaxBatchSize);
+        if (mEmbedding.length < batchSize * dimension)
+            mEmbedding = new float[batchSize * dimension];
+
+        for (int start = 0; start < count; start += batchSize) {
+            int size = Math.min(batchSize, count - start);
+            int cropped = 0;
+            try {
+                for (; cropped < size; cropped++) {
+                    faces.clip(mMisses[start + cropped], frame.cols(), frame.rows(), mClip);
+                    Mat crop = frame.submat(mClip);
+                    if (cropped < mCrops.size())
+                        mCrops.set(cropped, crop);
+                    else
+                        mCrops.add(crop);
+                }
+                mEmbedder.embed(mCrops, size, mEmbedding, 0);
+            } finally {
+                for (int i = 0; i < cropped; i++)
+                    mCrops.get(i).release();
+            }
+
+            for (int i = 0; i < size; i++) {
+                int face = mMisses[start + i];
+                ids[face] = match(mEmbedding, i * dimension);
+                if (similarities != null)
+                    similarities[face] = mLastSimilarity;
+                store(faces, face, ids[face], mEmbedding, i * dimension, now);
+            }
+        }
+    }
+
+    // Index of the cached result of the face, or -1 if it has to be recognized
+    private int lookup(FaceRects faces, int face, long now) {
+        if (mCache == null || faces.getId(face) == FaceRects.NO_ID)
+            return -1;
+        return mCache.lookup(faces.getId(face), now);
+    }
+
+    private void store(FaceRects faces, int face, int id, float[] embedding, int offset, long now) {
+        if (mCache != null && faces.getId(face) != FaceRects.NO_ID)
+            mCache.put(faces.getId(face), id, mLastSimilarity, embedding, offset, now);
+    }
+
+    /**
+     * Searches the index, or without one both galleries, for an embedding
+     * @param embedding - normalized embedding of the face
+     * @param offset - position of the embedding in the array
+     * @return id of the recognized person, or UNKNOWN
+     */
+    public int match(float[] embedding, int offset) {
+        int id = UNKNOWN;
+        mLastSimilarity = 0;
+        if (mIndex != null) {
+            // The index holds the stored faces as well
+            if (mIndex.search(embedding, offset, 1, mLabel, mSimilarity) == 1) {
+                id = mLabel[0];
+                mLastSimilarity = mSimilarity[0];
+            }
+            return mLastSimilarity >= mThreshold ? id : UNKNOWN;
+        }
+
+        if (mGallery.findNearest(embedding, offset, mMatch)) {
+            id = mMatch.id;
+            mLastSimilarity = mMatch.similarity;
+        }
+        if (mStored != null && mStored.findNearest(embedding, offset, mMatch)
+                && (id == UNKNOWN || mMatch.similarity > mLastSimilarity)) {
+            id = mMatch.id;
+            mLastSimilarity = mMatch.similarity;
+        }
+        return mLastSimilarity >= mThreshold ? id : UNKNOWN;
+    }
+
+    /**
+     * @return similarity of the best match of the last recognize() or match() call
+     */
+    public float getLastSimilarity() {
+        return mLastSimilarity;
+    }
+
+    // Embeds the part of the face inside of the frame into mEmbedding, false if there is none
+    private boolean embed(Mat frame, FaceRects faces, int face) {
+        if (!faces.clip(face, frame.cols(), frame.rows(), mClip))
+            return false;
+        Mat crop = frame.submat(mClip);
+        mEmbedder.embed(crop, mEmbedding, 0);
+        crop.release();
+        return true;
+    }
+
+    public void release() {
+        mEmbedder.release();
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.facerecognition;
+
+import org.opencv.core.CvType;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+
+/**
+ * Detection result container which is reused across frames. The rectangles are kept in
+ * primitive arrays and exchanged with a native MatOfRect through a single bulk get() or put(),
+ * so unlike MatOfRect.toArray() and fromArray() no Rect objects or buffers are allocated per
+ * frame. The arrays only grow when more faces than ever before are found.
+ * Every rect can carry the id of its track, NO_ID if it was not tracked.
+ * Instances are not thread safe.
+ */
+public class FaceRects {
+
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final int NO_ID = -1;
+
+    private int[] mX;
+    private int[] mY;
+    private int[] mWidth;
+    private int[] mHeight;
+    private int[] mIds;
+    private int[] mBuffer; // x, y, width, height of every rect, as in a CV_32SC4 Mat
+    private int mCount;
+
+    public FaceRects() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity - number of rects that fit in without growing
+     */
+    public FaceRects(int capacity) {
+        allocate(capacity);
+    }
+
+    /**
+     * @return number of rects
+     */
+    public int size() {
+        return mCount;
+    }
+
+    public int getX(int i) {
+        return mX[i];
+    }
+
+    public int getY(int i) {
+        return mY[i];
+    }
+
+    public int getWidth(int i) {
+        return mWidth[i];
+    }
+
+    public int getHeight(int i) {
+        return mHeight[i];
+    }
+
+    /**
+     * @param i - index of the rect
+     * @return id of the track of the face, or NO_ID
+     */
+    public int getId(int i) {
+        return mIds[i];
+    }
+
+    /**
+     * @param i - index of the rect
+     * @param id - id of the track of the face, or NO_ID
+     */
+    public void setId(int i, int id) {
+        mIds[i] = id;
+    }
+
+    public void clear() {
+        mCount = 0;
+    }
+
+    /**
+     * Appends a rect
+     * @param x - left edge
+     * @param y - top edge
+     * @param width - width of the rect
+     * @param height - height of the rect
+     */
+    public void add(int x, int y, int width, int height) {
+        ensureCapacity(mCount + 1);
+        mX[mCount] = x;
+        mY[mCount] = y;
+        mWidth[mCount] = width;
+        mHeight[mCount] = height;
+        mIds[mCount] = NO_ID;
+        mCount++;
+    }
+
+    /**
+     * Replaces the content with the rects of the Mat
+     * @param faces - the detection result, read with a single get()
+     */
+    public void fill(MatOfRect faces) {
+        int count = faces.rows();
+        ensureCapacity(count);
+        if (count > 0)
+            faces.get(0, 0, mBuffer); // Only as much as the Mat holds is copied
+        fill(mBuffer, count);
+    }
+
+    /**
+     * Replaces the content with rects laid out as in a CV_32SC4 Mat
+     * @param rects - x, y, width and height of every rect
+     * @param count - number of rects
+     */
+    public void fill(int[] rects, int count) {
+        ensureCapacity(count);
+        for (int i = 0, j = 0; i < count; i++, j += 4) {
+            mX[i] = rects[j];
+            mY[i] = rects[j + 1];
+            mWidth[i] = rects[j + 2];
+            mHeight[i] = rects[j + 3];
+            mIds[i] = NO_ID;
+        }
+        mCount = count;
+    }
+
+    /**
+     * Writes the rects into the Mat with a single put(), reusing its native buffer if it is large enough
+     * @param faces - the destination
+     */
+    public void copyTo(MatOfRect faces) {
+        for (int i = 0, j = 0; i < mCount; i++, j += 4) {
+            mBuffer[j] = mX[i];
+            mBuffer[j + 1] = mY[i];
+            mBuffer[j + 2] = mWidth[i];
+            mBuffer[j + 3] = mHeight[i];
+        }
+        faces.create(mCount, 1, CvType.CV_32SC4);
+        if (mCount > 0)
+            faces.put(0, 0, mBuffer);
+    }
+
+    /**
+     * Replaces the content with a copy of the other container
+     * @param other - the source
+     */
+    public void set(FaceRects other) {
+        ensureCapacity(other.mCount);
+        System.arraycopy(other.mX, 0, mX, 0, other.mCount);
+        System.arraycopy(other.mY, 0, mY, 0, other.mCount);
+        System.arraycopy(other.mWidth, 0, mWidth, 0, other.mCount);
+        System.arraycopy(other.mHeight, 0, mHeight, 0, other.mCount);
+        System.arraycopy(other.mIds, 0, mIds, 0, other.mCount);
+        mCount = other.mCount;
+    }
+
+    /**
+     * Intersects a rect with an image, e.g. for a tracked face which moved partly out of the frame
+     * @param i - index of the rect
+     * @param width - width of the image
+     * @param height - height of the image
+     * @param clipped - receives the part of the rect inside the image
+     * @return false if no part of the rect is inside the image, clipped is then undefined
+     */
+    public boolean clip(int i, int width, int height, Rect clipped) {
+        int left = Math.max(mX[i], 0);
+        int top = Math.max(mY[i], 0);
+        int right = Math.min(mX[i] + mWidth[i], width);
+        int bottom = Math.min(mY[i] + mHeight[i], height);
+        if (right <= left || bottom <= top)
+            return false;
+        clipped.x = left;
+        clipped.y = top;
+        clipped.width = right - left;
+        clipped.height = bottom - top;
+        return true;
+    }
+
+    /**
+     * Scales all of the rects the same way as RectUtils.scale()
+     * @param factor - ratio between the target and the source coordinate space
+     */
+    public void scale(double factor) {
+        for (int i = 0; i < mCount; i++) {
+            mX[i] = (int) Math.round(mX[i] * factor);
+            mY[i] = (int) Math.round(mY[i] * factor);
+            mWidth[i] = (int) Math.round(mWidth[i] * factor);
+            mHeight[i] = (int) Math.round(mHeight[i] * factor);
+        }
+    }
+
+    /**
+     * Non-maximum suppression: removes every rect which overlaps a larger one by more than
+     * the threshold. Cascades do not report a confidence, so the larger rect is kept.
+     * The order of the remaining rects is from the largest to the smallest.
+     * @param maxOverlap - largest allowed intersection over union of two kept rects
+     */
+    public void suppressOverlaps(double maxOverlap) {
+        // Selection sort by area, the counts are small
+        for (int i = 0; i < mCount; i++) {
+            int largest = i;
+            for (int j = i + 1; j < mCount; j++) {
+                if ((long) mWidth[j] * mHeight[j] > (long) mWidth[largest] * mHeight[largest])
+                    largest = j;
+            }
+            swap(i, largest);
+        }
+
+        int kept = 0;
+        for (int i = 0; i < mCount; i++) {
+            boolean suppressed = false;
+            for (int j = 0; j < kept && !suppressed; j++)
+                suppressed = overlap(i, j) > maxOverlap;
+            if (!suppressed)
+                swap(kept++, i);
+        }
+        mCount = kept;
+    }
+
+    private double overlap(int a, int b) {
+        return overlap(this, a, this, b);
+    }
+
+    /**
+     * @param a - first container
+     * @param i - index of the rect in the first container
+     * @param b - second container, can be the same as the first one
+     * @param j - index of the rect in the second container
+     * @return intersection over union of the two rects, 0 if they do not overlap
+     */
+    public static double overlap(FaceRects a, int i, FaceRects b, int j) {
+        int left = Math.max(a.mX[i], b.mX[j]);
+        int top = Math.max(a.mY[i], b.mY[j]);
+        int right = Math.min(a.mX[i] + a.mWidth[i], b.mX[j] + b.mWidth[j]);
+        int bottom = Math.min(a.mY[i] + a.mHeight[i], b.mY[j] + b.mHeight[j]);
+        if (right <= left || bottom <= top)
+            return 0;
+        double intersection = (double) (right - left) * (bottom - top);
+        double union = (double) a.mWidth[i] * a.mHeight[i] + (double) b.mWidth[j] * b.mHeight[j] - intersection;
+        return intersection / union;
+    }
+
+    private void swap(int a, int b) {
+        int tmp = mX[a]; mX[a] = mX[b]; mX[b] = tmp;
+        tmp = mY[a]; mY[a] = mY[b]; mY[b] = tmp;
+        tmp = mWidth[a]; mWidth[a] = mWidth[b]; mWidth[b] = tmp;
+        tmp = mHeight[a]; mHeight[a] = mHeight[b]; mHeight[b] = tmp;
+        tmp = mIds[a]; mIds[a] = mIds[b]; mIds[b] = tmp;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mX.length) {
+            int[] x = mX, y = mY, width = mWidth, height = mHeight, ids = mIds;
+            allocate(Math.max(capacity, mX.length * 2));
+            System.arraycopy(x, 0, mX, 0, mCount);
+            System.arraycopy(y, 0, mY, 0, mCount);
+            System.arraycopy(width, 0, mWidth, 0, mCount);
+            System.arraycopy(height, 0, mHeight, 0, mCount);
+            System.arraycopy(ids, 0, mIds, 0, mCount);
+        }
+    }
+
+    private void allocate(int capacity) {
+        mX = new int[capacity];
+        mY = new int[capacity];
+        mWidth = new int[capacity];
+        mHeight = new int[capacity];
+        mIds = new int[capacity];
+        mBuffer = new int[capacity * 4];
+    }
+}
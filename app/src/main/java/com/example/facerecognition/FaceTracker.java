@@ -0,0 +1,264 @@
+package com.example.facerecognition;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.SparsePyrLKOpticalFlow;
+
+import java.util.Arrays;
+
+/**
+ * Detect-then-track stage. The full cascade detection only runs every few frames,
+ * or as soon as a face can't be followed reliably anymore. In between the face
+ * boxes are moved with pyramidal Lucas-Kanade optical flow computed on a grid of
+ * points inside of every face, which is much cheaper than running the cascade.
+ * Both detection and tracking work on the downscaled frame of the FaceDetector.
+ * Every track has an id which stays the same while the face is followed, also across
+ * detections that find the face again at an overlapping position.
+ * The faces are kept in FaceRects, so processing a frame does not allocate.
+ */
+public class FaceTracker {
+
+    private static final String TAG = "FaceTracker";
+
+    public static final int DEFAULT_DETECTION_INTERVAL = 5;
+    public static final float DEFAULT_MIN_CONFIDENCE = 0.5f;
+
+    private static final int GRID_SIZE = 5; // Points tracked per face: GRID_SIZE * GRID_SIZE
+    private static final int POINTS_PER_FACE = GRID_SIZE * GRID_SIZE;
+    private static final float GRID_INSET = 0.2f; // Keep the points away from the background
+    private static final int MAX_FACES = 16;
+    private static final double MIN_MATCH_OVERLAP = 0.3; // Detection continuing a track
+
+    private final FaceDetector mDetector;
+    private final SparsePyrLKOpticalFlow mOpticalFlow = SparsePyrLKOpticalFlow.create(new Size(15, 15), 2);
+
+    private Mat mPrevFrame = new Mat();
+    private Mat mFrame = new Mat();
+    private final Size mFrameSize = new Size();
+    private final MatOfRect mDetections = new MatOfRect();
+    private final MatOfPoint2f mPrevPoints = new MatOfPoint2f();
+    private final MatOfPoint2f mNextPoints = new MatOfPoint2f();
+    private final MatOfByte mStatus = new MatOfByte();
+    private final MatOfFloat mError = new MatOfFloat();
+
+    private final float[] mPrevCoords = new float[MAX_FACES * POINTS_PER_FACE * 2];
+    private final float[] mNextCoords = new float[MAX_FACES * POINTS_PER_FACE * 2];
+    private final byte[] mStatusValues = new byte[MAX_FACES * POINTS_PER_FACE];
+    private final float[] mDx = new float[POINTS_PER_FACE];
+    private final float[] mDy = new float[POINTS_PER_FACE];
+
+    // Tracks in the downscaled coordinates, swapped with the next ones when they are updated
+    private FaceRects mTracks = new FaceRects();
+    private FaceRects mNextTracks = new FaceRects();
+    private boolean[] mTaken = new boolean[FaceRects.DEFAULT_CAPACITY];
+    private int mNextTrackId;
+    private int mDetectionInterval = DEFAULT_DETECTION_INTERVAL;
+    private float mMinConfidence = DEFAULT_MIN_CONFIDENCE;
+    private int mFramesSinceDetection;
+    private boolean mForceDetection = true;
+
+    private long mDetectedFrames;
+    private long mTrackedFrames;
+
+    /**
+     * @param detector - detector used for the full frame detections
+     */
+    public FaceTracker(FaceDetector detector) {
+        mDetector = detector;
+    }
+
+    /**
+     * Sets how often the full detection runs
+     * @param interval - number of frames between two detections, 1 detects on every frame
+     */
+    public void setDetectionInterval(int interval) {
+        mDetectionInterval = Math.max(1, interval);
+    }
+
+    /**
+     * Sets the confidence below which a track is considered lost and
+     * a detection is forced on the next frame
+     * @param confidence - minimal fraction of the grid points that has to be tracked
+     */
+    public void setMinConfidence(float confidence) {
+        mMinConfidence = confidence;
+    }
+
+    /**
+     * @return number of frames on which the cascade was run
+     */
+    public long getDetectedFrames() {
+        return mDetectedFrames;
+    }
+
+    /**
+     * @return number of frames on which the faces were only tracked
+     */
+    public long getTrackedFrames() {
+        return mTrackedFrames;
+    }
+
+    /**
+     * Finds the faces in the gray frame either by detection or by tracking
+     * @param gray - single channel frame
+     * @param faces - faces in the frame coordinates, with the ids of their tracks
+     */
+    public void process(Mat gray, FaceRects faces) {
+        double scale = mDetector.getScale(gray.cols());
+        if (scale != 1.0) {
+            mFrameSize.width = Math.round(gray.cols() / scale);
+            mFrameSize.height = Math.round(gray.rows() / scale);
+            Imgproc.resize(gray, mFrame, mFrameSize, 0, 0, Imgproc.INTER_AREA);
+        } else {
+            // The caller reuses its frame, while this one is needed as the previous frame
+            gray.copyTo(mFrame);
+        }
+
+        if (mForceDetection || mFramesSinceDetection + 1 >= mDetectionInterval
+                || mPrevFrame.cols() != mFrame.cols() || mPrevFrame.rows() != mFrame.rows()) {
+            // The tracked boxes tell a RoiFaceDetector where to look, they are in the same coordinates
+            mDetector.setRegions(mTracks, mFramesSinceDetection + 1);
+            mDetector.detect(mFrame, mDetections); // Already downscaled, so no scaling is done by the detector
+            mNextTracks.fill(mDetections);
+            assignTrackIds(mNextTracks);
+            swapTracks();
+            mFramesSinceDetection = 0;
+            mForceDetection = false;
+            mDetectedFrames++;
+        } else {
+            track();
+            mFramesSinceDetection++;
+            mTrackedFrames++;
+        }
+
+        // Swap the buffers, so the current frame is used as the previous one on the next call
+        Mat tmp = mPrevFrame;
+        mPrevFrame = mFrame;
+        mFrame = tmp;
+
+        faces.set(mTracks);
+        if (scale != 1.0)
+            faces.scale(scale);
+    }
+
+    /**
+     * Gives every detection the id of the current track it overlaps the most, or a new id.
+     * The counts are small, so all of the pairs are compared.
+     */
+    private void assignTrackIds(FaceRects detections) {
+        int tracks = mTracks.size();
+        if (mTaken.length < tracks)
+            mTaken = new boolean[Math.max(tracks, mTaken.length * 2)];
+        Arrays.fill(mTaken, 0, tracks, false);
+
+        for (int i = 0; i < detections.size(); i++) {
+            int best = -1;
+            double bestOverlap = MIN_MATCH_OVERLAP;
+            for (int j = 0; j < tracks; j++) {
+                double overlap = FaceRects.overlap(detections, i, mTracks, j);
+                if (!mTaken[j] && overlap >= bestOverlap) {
+                    bestOverlap = overlap;
+                    best = j;
+                }
+            }
+            if (best >= 0) {
+                mTaken[best] = true;
+                detections.setId(i, mTracks.getId(best));
+            } else {
+                detections.setId(i, mNextTrackId++);
+            }
+        }
+    }
+
+    private void track() {
+        int total = mTracks.size();
+        int count = Math.min(total, MAX_FACES);
+        if (count == 0)
+            return;
+        if (count < total) {
+            // The faces above MAX_FACES stay where they were until the next frame detects them again
+            Log.d(TAG, "Tracking " + count + " of " + total + " faces");
+            mForceDetection = true;
+        }
+
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int width = mTracks.getWidth(i);
+            int height = mTracks.getHeight(i);
+            float stepX = width * (1 - 2 * GRID_INSET) / (GRID_SIZE - 1);
+            float stepY = height * (1 - 2 * GRID_INSET) / (GRID_SIZE - 1);
+            float startX = mTracks.getX(i) + width * GRID_INSET;
+            float startY = mTracks.getY(i) + height * GRID_INSET;
+            for (int y = 0; y < GRID_SIZE; y++) {
+                for (int x = 0; x < GRID_SIZE; x++) {
+                    mPrevCoords[n++] = startX + x * stepX;
+                    mPrevCoords[n++] = startY + y * stepY;
+                }
+            }
+        }
+
+        int points = count * POINTS_PER_FACE;
+        mPrevPoints.alloc(points);
+        mPrevPoints.put(0, 0, mPrevCoords); // Only the allocated number of points is copied
+        mOpticalFlow.calc(mPrevFrame, mFrame, mPrevPoints, mNextPoints, mStatus, mError);
+        mNextPoints.get(0, 0, mNextCoords);
+        mStatus.get(0, 0, mStatusValues);
+
+        mNextTracks.clear();
+        for (int i = 0; i < count; i++) {
+            int tracked = 0;
+            for (int p = 0; p < POINTS_PER_FACE; p++) {
+                int idx = i * POINTS_PER_FACE + p;
+                if (mStatusValues[idx] == 1) {
+                    mDx[tracked] = mNextCoords[2 * idx] - mPrevCoords[2 * idx];
+                    mDy[tracked] = mNextCoords[2 * idx + 1] - mPrevCoords[2 * idx + 1];
+                    tracked++;
+                }
+            }
+
+            if (tracked == 0 || (float) tracked / POINTS_PER_FACE < mMinConfidence) {
+                // Lost this face, look for it again on the next frame
+                mForceDetection = true;
+                continue;
+            }
+
+            mNextTracks.add(mTracks.getX(i) + Math.round(median(mDx, tracked)),
+                    mTracks.getY(i) + Math.round(median(mDy, tracked)),
+                    mTracks.getWidth(i), mTracks.getHeight(i));
+            mNextTracks.setId(mNextTracks.size() - 1, mTracks.getId(i));
+        }
+        for (int i = count; i < total; i++) {
+            mNextTracks.add(mTracks.getX(i), mTracks.getY(i), mTracks.getWidth(i), mTracks.getHeight(i));
+            mNextTracks.setId(mNextTracks.size() - 1, mTracks.getId(i));
+        }
+        swapTracks();
+    }
+
+    private void swapTracks() {
+        FaceRects tmp = mTracks;
+        mTracks = mNextTracks;
+        mNextTracks = tmp;
+    }
+
+    private static float median(float[] values, int count) {
+        Arrays.sort(values, 0, count);
+        return values[count / 2];
+    }
+
+    /**
+     * Drops all of the tracks, so the next frame is detected again
+     */
+    public void reset() {
+        mTracks.clear();
+        mForceDetection = true;
+        mPrevFrame.release();
+        mFrame.release();
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.facerecognition;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+/**
+ * Replacement of org.opencv.android.FpsMeter which does not allocate or log per frame.
+ * The intervals between the last WINDOW_SIZE frames are kept in a ring buffer, from which
+ * the instantaneous, average and minimum frame rate are computed. The number of dropped
+ * frames is not estimated from the intervals but set by the camera view, which knows it exactly.
+ * The text is formatted into a reused char array, and only every UPDATE_STEP frames.
+ */
+public class FpsMeter {
+
+    public static final int WINDOW_SIZE = 64;
+    private static final int UPDATE_STEP = 10;
+    private static final String FPS_LABEL = " FPS avg ";
+    private static final String MIN_LABEL = " min ";
+    private static final String RESOLUTION_LABEL = " @";
+    private static final String DROPPED_LABEL = " dropped ";
+    // Longest text updateText() can write
+    private static final int MAX_TEXT_LENGTH = 3 * CharFormat.MAX_TENTHS_LENGTH + FPS_LABEL.length()
+            + MIN_LABEL.length() + RESOLUTION_LABEL.length() + 2 * CharFormat.MAX_LONG_LENGTH + 1
+            + DROPPED_LABEL.length() + CharFormat.MAX_LONG_LENGTH;
+
+    private final long[] mIntervals = new long[WINDOW_SIZE];
+    private int mIntervalIdx;
+    private int mIntervalCount;
+    private long mIntervalSum;
+    private long mPrevFrameTime;
+    private long mFrames;
+    private long mDroppedFrames = -1;
+
+    private int mWidth;
+    private int mHeight;
+
+    private final char[] mText = new char[MAX_TEXT_LENGTH];
+    private int mTextLength;
+    private final Paint mPaint;
+
+    public FpsMeter() {
+        mPaint = new Paint();
+        mPaint.setColor(Color.BLUE);
+        mPaint.setTextSize(20);
+    }
+
+    /**
+     * Shall be called once per displayed frame
+     */
+    public void measure() {
+        long time = System.nanoTime();
+        mFrames++;
+        if (mPrevFrameTime != 0) {
+            long interval = time - mPrevFrameTime;
+            if (mIntervalCount == WINDOW_SIZE) {
+                mIntervalSum -= mIntervals[mIntervalIdx];
+            } else {
+                mIntervalCount++;
+            }
+            mIntervals[mIntervalIdx] = interval;
+            mIntervalSum += interval;
+            mIntervalIdx = (mIntervalIdx + 1) % WINDOW_SIZE;
+        }
+        mPrevFrameTime = time;
+
+        if (mFrames % UPDATE_STEP == 0)
+            updateText();
+    }
+
+    /**
+     * @param droppedFrames - number of frames the camera view has dropped, negative if it
+     *                      cannot tell, in which case none are shown
+     */
+    public void setDroppedFrames(long droppedFrames) {
+        mDroppedFrames = droppedFrames;
+    }
+
+    public void setResolution(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Removes all of the measurements, e.g. after the camera was restarted
+     */
+    public void reset() {
+        mIntervalIdx = 0;
+        mIntervalCount = 0;
+        mIntervalSum = 0;
+        mPrevFrameTime = 0;
+        mFrames = 0;
+        mTextLength = 0;
+    }
+
+    /**
+     * @return frame rate computed from the last interval
+     */
+    public double getInstantFps() {
+        if (mIntervalCount == 0)
+            return 0;
+        return toFps(mIntervals[(mIntervalIdx + WINDOW_SIZE - 1) % WINDOW_SIZE]);
+    }
+
+    /**
+     * @return average frame rate over the window
+     */
+    public double getAverageFps() {
+        if (mIntervalCount == 0)
+            return 0;
+        return toFps((double) mIntervalSum / mIntervalCount);
+    }
+
+    /**
+     * @return frame rate of the slowest interval in the window
+     */
+    public double getMinFps() {
+        long max = 0;
+        for (int i = 0; i < mIntervalCount; i++)
+            max = Math.max(max, mIntervals[i]);
+        return max == 0 ? 0 : toFps(max);
+    }
+
+    /**
+     * @return number of dropped frames last set by the camera view, negative if unknown
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    public void draw(Canvas canvas, float offsetx, float offsety) {
+        if (mTextLength > 0)
+            canvas.drawText(mText, 0, mTextLength, offsetx, offsety, mPaint);
+    }
+
+    private void updateText() {
+        int len = CharFormat.appendTenths(mText, 0, Math.round(getInstantFps() * 10));
+        len = CharFormat.append(mText, len, FPS_LABEL);
+        len = CharFormat.appendTenths(mText, len, Math.round(getAverageFps() * 10));
+        len = CharFormat.append(mText, len, MIN_LABEL);
+        len = CharFormat.appendTenths(mText, len, Math.round(getMinFps() * 10));
+        if (mWidth != 0 && mHeight != 0) {
+            len = CharFormat.append(mText, len, RESOLUTION_LABEL);
+            len = CharFormat.append(mText, len, mWidth);
+            mText[len++] = 'x';
+            len = CharFormat.append(mText, len, mHeight);
+        }
+        if (mDroppedFrames >= 0) {
+            len = CharFormat.append(mText, len, DROPPED_LABEL);
+            len = CharFormat.append(mText, len, mDroppedFrames);
+        }
+        mTextLength = len;
+    }
+
+    private static double toFps(double intervalNanos) {
+        return 1e9 / intervalNanos;
+    }
+}
@@ -0,0 +1,324 @@
+package com.example.facerecognition;
+
+import android.util.Log;
+
+import com.example.facerecognition.CameraBridgeViewBase.CvCameraViewFrame;
+import com.example.facerecognition.CameraBridgeViewBase.CvCameraViewListener2;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chain of FrameProcessors fed by a FrameSource, whose output goes to FrameSinks.
+ * The pipeline is the CvCameraViewListener2 of the source.
+ * Without an executor the stages run on the thread of the source and the output is also
+ * returned to the source, so a camera view draws it as before. With an executor every stage
+ * runs as its own task, so while a stage processes a frame the previous stage can already
+ * process the next one, and the throughput is the one of the slowest stage instead of the
+ * sum of all of them. The stages only overlap if the executor has a thread for each of them.
+ * A frame is copied once when it enters the pipeline, and the copy is then handed from
+ * stage to stage together with the output of the previous stage. The color frame is only
+ * converted and copied if setCopyColor() asks for it. Like in DetectionWorker, a frame
+ * arriving at a stage which is still busy replaces the one waiting there, and null is
+ * returned to the source, so the output has to be drawn by a sink, e.g. a CanvasFrameSink. Work which is too slow for every frame, like
+ * the detection, is better left to a worker of its own, so it does not hold the stages back.
+ * The configuration must not be changed while the source is started.
+ */
+public class FramePipeline implements CvCameraViewListener2 {
+
+    private static final String TAG = "FramePipeline";
+
+    private final List<FrameProcessor> mProcessors = new ArrayList<FrameProcessor>();
+    private final List<FrameSink> mSinks = new ArrayList<FrameSink>();
+    private final List<Stage> mStages = new ArrayList<Stage>(); // Only with an executor
+    private final List<Frame> mFrames = new ArrayList<Frame>(); // Guarded by mFreeFrames
+    private final List<Frame> mFreeFrames = new ArrayList<Frame>();
+    private Executor mExecutor;
+    private volatile boolean mCopyColor;
+    private final AtomicLong mDroppedFrames = new AtomicLong();
+
+    /**
+     * Appends a stage to the end of the chain
+     * @param processor - the stage
+     * @return this pipeline
+     */
+    public FramePipeline addProcessor(FrameProcessor processor) {
+        mProcessors.add(processor);
+        return this;
+    }
+
+    /**
+     * @param sink - consumer of the output of the last stage
+     * @return this pipeline
+     */
+    public FramePipeline addSink(FrameSink sink) {
+        mSinks.add(sink);
+        return this;
+    }
+
+    /**
+     * @param executor - executor the stages run on, or null to run them on the thread of the source
+     * @return this pipeline
+     */
+    public FramePipeline setExecutor(Executor executor) {
+        mExecutor = executor;
+        return this;
+    }
+
+    /**
+     * When the stages run on an executor only the gray frame is copied by default. A stage
+     * or sink which uses rgba(), or a last stage without output, needs the color frame.
+     * It can be changed while the source is started, e.g. once the stages know what they need.
+     * @param copyColor - whether rgba() of the copied frames is available
+     * @return this pipeline
+     */
+    public FramePipeline setCopyColor(boolean copyColor) {
+        mCopyColor = copyColor;
+        return this;
+    }
+
+    /**
+     * @return number of stages, which is the number of threads the executor needs for all of them to overlap
+     */
+    public int getStageCount() {
+        return Math.max(1, mProcessors.size());
+    }
+
+    /**
+     * @return number of frames replaced by a newer frame before a stage on the executor processed them
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames.get();
+    }
+
+    @Override
+    public void onCameraViewStarted(int width, int height) {
+        if (mExecutor != null) {
+            mStages.clear();
+            if (mProcessors.isEmpty()) {
+                mStages.add(new Stage(null)); // Only hands the frames over to the sinks
+            } else {
+                for (FrameProcessor processor : mProcessors)
+                    mStages.add(new Stage(processor));
+            }
+            for (int i = 0; i < mStages.size() - 1; i++)
+                mStages.get(i).mNext = mStages.get(i + 1);
+        }
+        for (FrameProcessor processor : mProcessors)
+            processor.onStarted(width, height);
+        for (FrameSink sink : mSinks)
+            sink.onStarted(width, height);
+    }
+
+    @Override
+    public void onCameraViewStopped() {
+        // Let the frames being processed finish first, in the order of the stages so none is handed on afterwards
+        for (Stage stage : mStages)
+            stage.drain();
+
+        for (FrameProcessor processor : mProcessors)
+            processor.onStopped();
+        for (FrameSink sink : mSinks)
+            sink.onStopped();
+
+        mStages.clear();
+        synchronized (mFreeFrames) {
+            for (Frame frame : mFrames)
+                frame.release();
+            mFrames.clear();
+            mFreeFrames.clear();
+        }
+    }
+
+    @Override
+    public Mat onCameraFrame(CvCameraViewFrame inputFrame) {
+        long time = System.nanoTime();
+        if (mExecutor == null)
+            return process(inputFrame, time);
+
+        Frame frame = obtainFrame();
+        frame.copyFrom(inputFrame, time, mCopyColor);
+        mStages.get(0).offer(frame);
+        return null;
+    }
+
+    private Mat process(CvCameraViewFrame frame, long time) {
+        Mat output = null;
+        for (FrameProcessor processor : mProcessors)
+            output = processor.process(frame, output);
+        return deliver(frame, output, time);
+    }
+
+    private Mat deliver(CvCameraViewFrame frame, Mat output, long time) {
+        if (output == null)
+            output = frame.rgba();
+        for (FrameSink sink : mSinks)
+            sink.onFrame(output, time);
+        return output;
+    }
+
+    private Frame obtainFrame() {
+        synchronized (mFreeFrames) {
+            if (!mFreeFrames.isEmpty())
+                return mFreeFrames.remove(mFreeFrames.size() - 1);
+            Frame frame = new Frame();
+            mFrames.add(frame);
+            return frame;
+        }
+    }
+
+    private void recycleFrame(Frame frame) {
+        synchronized (mFreeFrames) {
+            mFreeFrames.add(frame);
+        }
+    }
+
+    /**
+     * A processor running on the executor. It keeps the latest frame the previous stage
+     * handed over until it is free, and processes the frames until there are none left.
+     */
+    private class Stage implements Runnable {
+        private final FrameProcessor mProcessor;
+        private Stage mNext;
+        private Frame mPending; // Guarded by this
+        private boolean mScheduled; // Guarded by this
+
+        Stage(FrameProcessor processor) {
+            mProcessor = processor;
+        }
+
+        /**
+         * Takes over a frame, which replaces the one still waiting for this stage
+         */
+        void offer(Frame frame) {
+            Frame dropped;
+            boolean schedule;
+            synchronized (this) {
+                dropped = mPending;
+                mPending = frame;
+                schedule = !mScheduled;
+                mScheduled = true;
+            }
+            if (dropped != null) {
+                mDroppedFrames.incrementAndGet();
+                recycleFrame(dropped);
+            }
+            if (schedule)
+                mExecutor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            do {
+                Frame frame;
+                synchronized (this) {
+                    if (mPending == null) {
+                        mScheduled = false;
+                        notifyAll();
+                        break;
+                    }
+                    frame = mPending;
+                    mPending = null;
+                }
+
+                boolean handedOn = false;
+                try {
+                    Mat output = frame.input();
+                    if (mProcessor != null)
+                        output = mProcessor.process(frame, output);
+                    if (mNext != null) {
+                        frame.setInput(output);
+                        mNext.offer(frame);
+                        handedOn = true;
+                    } else {
+                        deliver(frame, output, frame.mTime);
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Frame processing failed", e);
+                } finally {
+                    if (!handedOn)
+                        recycleFrame(frame);
+                }
+            } while (true);
+        }
+
+        /**
+         * Drops the pending frame and waits for the one being processed
+         */
+        void drain() {
+            Frame dropped;
+            synchronized (this) {
+                dropped = mPending;
+                mPending = null;
+                while (mScheduled) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            if (dropped != null)
+                recycleFrame(dropped);
+        }
+    }
+
+    /**
+     * Copy of a frame of the source, which stays valid after the source reuses its buffers.
+     * It is made once when the frame enters the pipeline and then handed from stage to
+     * stage together with the output of the previous stage.
+     */
+    private static class Frame implements CvCameraViewFrame {
+        private final Mat mGray = new Mat();
+        private final Mat mRgba = new Mat();
+        private final Mat mInput = new Mat();
+        private Mat mCurrentInput;
+        private long mTime;
+
+        void copyFrom(CvCameraViewFrame frame, long time, boolean copyColor) {
+            frame.gray().copyTo(mGray);
+            if (copyColor)
+                frame.rgba().copyTo(mRgba);
+            else
+                mRgba.release();
+            mCurrentInput = null;
+            mTime = time;
+        }
+
+        /**
+         * Keeps the output of a stage for the next one. Only an output which is not a
+         * buffer of this frame is copied, since the stage may reuse it for its next frame.
+         */
+        void setInput(Mat output) {
+            if (output != null && output != mGray && output != mRgba && output != mInput) {
+                output.copyTo(mInput);
+                output = mInput;
+            }
+            mCurrentInput = output;
+        }
+
+        Mat input() {
+            return mCurrentInput;
+        }
+
+        @Override
+        public Mat gray() {
+            return mGray;
+        }
+
+        @Override
+        public Mat rgba() {
+            return mRgba;
+        }
+
+        void release() {
+            mGray.release();
+            mRgba.release();
+            mInput.release();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.facerecognition;
+
+import com.example.facerecognition.CameraBridgeViewBase.CvCameraViewFrame;
+
+import org.opencv.core.Mat;
+
+/**
+ * A single processing stage of a FramePipeline. The stages are chained, each of them gets
+ * the frame from the source and the output of the previous stage.
+ */
+public interface FrameProcessor {
+
+    /**
+     * Called before the first frame, the buffers of the stage can be allocated here
+     * @param width - width of the frames
+     * @param height - height of the frames
+     */
+    public void onStarted(int width, int height);
+
+    /**
+     * Processes a single frame
+     * @param frame - the frame from the source, only valid during this call
+     * @param input - output of the previous stage, or null for the first stage
+     * @return output of this stage, it can be the input itself
+     */
+    public Mat process(CvCameraViewFrame frame, Mat input);
+
+    /**
+     * Called after the last frame, the buffers of the stage shall be released here
+     */
+    public void onStopped();
+}
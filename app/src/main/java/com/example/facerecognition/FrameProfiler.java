@@ -0,0 +1,98 @@
+package com.example.facerecognition;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+/**
+ * Collects per-stage latencies of the frame pipeline into LatencyHistograms, so it can be
+ * seen where the frame time goes on a given device.
+ * Stages are recorded by CameraBridgeViewBase (queue, color conversion, listener,
+ * matToBitmap, draw and the total time from capture to the frame being posted) and by the
+ * DetectionWorker (detection). Every stage has a single writer thread, so recording does not
+ * need any locks and it never allocates. The statistics can be read through getHistogram()
+ * or drawn on the preview with draw().
+ */
+public class FrameProfiler {
+
+    public static final int STAGE_QUEUE = 0; // Capture to delivery
+    public static final int STAGE_COLOR_CONVERT = 1;
+    public static final int STAGE_LISTENER = 2; // Whole onCameraFrame, including color conversion
+    public static final int STAGE_DETECT = 3;
+    public static final int STAGE_MAT_TO_BITMAP = 4;
+    public static final int STAGE_DRAW = 5;
+    public static final int STAGE_TOTAL = 6; // Capture to the frame being posted
+    public static final int STAGE_COUNT = 7;
+
+    private static final String[] STAGE_NAMES = {
+            "queue", "color", "listener", "detect", "toBitmap", "draw", "total"
+    };
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGE_COUNT];
+    private final char[] mText = new char[maxNameLength() + LatencyHistogram.MAX_SUMMARY_LENGTH];
+    private final long[] mPercentiles = new long[LatencyHistogram.SUMMARY_PERCENTILE_COUNT];
+    private final Paint mPaint;
+
+    public FrameProfiler() {
+        for (int i = 0; i < STAGE_COUNT; i++)
+            mHistograms[i] = new LatencyHistogram();
+
+        mPaint = new Paint();
+        mPaint.setColor(Color.YELLOW);
+        mPaint.setTextSize(20);
+    }
+
+    /**
+     * @param stage - one of the STAGE_* constants
+     * @return name of the stage
+     */
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /**
+     * Records the duration of a stage
+     * @param stage - one of the STAGE_* constants
+     * @param nanos - duration in nanoseconds
+     */
+    public void record(int stage, long nanos) {
+        mHistograms[stage].record(nanos);
+    }
+
+    /**
+     * @param stage - one of the STAGE_* constants
+     * @return histogram of the stage
+     */
+    public LatencyHistogram getHistogram(int stage) {
+        return mHistograms[stage];
+    }
+
+    /**
+     * Removes all of the recorded samples. Must not be called while frames are being processed.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : mHistograms)
+            histogram.reset();
+    }
+
+    /**
+     * Draws p50/p95/p99/max of every stage in milliseconds
+     * @param canvas - canvas to draw on
+     * @param offsetX - position of the text
+     * @param offsetY - position of the first line
+     */
+    public void draw(Canvas canvas, float offsetX, float offsetY) {
+        float lineHeight = mPaint.getTextSize() * 1.2f;
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            int len = mHistograms[stage].appendSummary(mText, 0, STAGE_NAMES[stage], mPercentiles);
+            canvas.drawText(mText, 0, len, offsetX, offsetY + stage * lineHeight, mPaint);
+        }
+    }
+
+    private static int maxNameLength() {
+        int length = 0;
+        for (String name : STAGE_NAMES)
+            length = Math.max(length, name.length());
+        return length;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.facerecognition;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Headless driver which pushes recorded frames through a CvCameraViewListener2, so the frame
+ * processing can be measured without a camera or a view, e.g. on a CI emulator.
+ * The recordings are raw NV21 files as delivered by the camera preview callback. A file
+ * holds one or more frames of width * height * 3 / 2 bytes each, the files are replayed
+ * in the order of their names.
+ * The frames are either delivered as fast as the listener returns, or at a fixed rate like
+ * a camera. Reading the files is not included in the measured latency. The latency of a
+ * frame is the time from when it was due until the listener returned, so at a fixed rate it
+ * also shows the listener falling behind.
+ */
+public class FrameReplayer {
+
+    private static final String TAG = "FrameReplayer";
+
+    private final File[] mFiles;
+    private final int mWidth;
+    private final int mHeight;
+    private double mFrameRate = 0;
+    private int mLoops = 1;
+
+    /**
+     * @param files - recordings to be replayed, in this order
+     * @param width - width of the recorded frames
+     * @param height - height of the recorded frames
+     */
+    public FrameReplayer(File[] files, int width, int height) {
+        mFiles = files;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Creates a replayer of all of the files in the directory
+     * @param directory - directory with the recordings
+     * @param width - width of the recorded frames
+     * @param height - height of the recorded frames
+     * @return the replayer
+     * @throws IOException if the directory can not be listed
+     */
+    public static FrameReplayer fromDirectory(File directory, int width, int height) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null)
+            throw new IOException("Can not list " + directory);
+        Arrays.sort(files);
+        return new FrameReplayer(files, width, height);
+    }
+
+    /**
+     * @param frameRate - rate the frames are delivered at, 0 to deliver them as fast as possible
+     */
+    public void setFrameRate(double frameRate) {
+        mFrameRate = frameRate;
+    }
+
+    /**
+     * @param loops - how many times the recordings are replayed
+     */
+    public void setLoops(int loops) {
+        mLoops = loops;
+    }
+
+    /**
+     * Replays the recordings on the calling thread. The listener gets the same calls as from
+     * a camera view: onCameraViewStarted(), onCameraFrame() for every frame and onCameraViewStopped().
+     * The replay ends early when the thread is interrupted.
+     * @param listener - the frame processing to be measured
+     * @return the measured statistics
+     * @throws IOException if a recording can not be read
+     */
+    public Result run(CameraBridgeViewBase.CvCameraViewListener2 listener) throws IOException {
+        byte[] buffer = new byte[ReplayFrame.getFrameSize(mWidth, mHeight)];
+        ReplayFrame frame = new ReplayFrame(mWidth, mHeight);
+        Result result = new Result();
+        long interval = mFrameRate > 0 ? (long) (1e9 / mFrameRate) : 0;
+
+        listener.onCameraViewStarted(mWidth, mHeight);
+        try {
+            long start = System.nanoTime();
+            long due = start;
+            for (int loop = 0; loop < mLoops && !Thread.currentThread().isInterrupted(); loop++) {
+                for (int i = 0; i < mFiles.length && !Thread.currentThread().isInterrupted(); i++) {
+                    File file = mFiles[i];
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                    try {
+                        while (!Thread.currentThread().isInterrupted() && readFrame(in, buffer)) {
+                            frame.load(buffer);
+
+                            long now = System.nanoTime();
+                            if (interval > 0) {
+                                if (due > now)
+                                    sleep(due - now);
+                            } else {
+                                due = now;
+                            }
+
+                            listener.onCameraFrame(frame);
+                            result.mLatency.record(System.nanoTime() - due);
+                            result.mFrames++;
+                            due += interval;
+                        }
+                    } finally {
+                        in.close();
+                    }
+                }
+            }
+            result.mElapsed = System.nanoTime() - start;
+        } finally {
+            listener.onCameraViewStopped();
+            frame.release();
+        }
+
+        Log.i(TAG, result.toString());
+        return result;
+    }
+
+    private static boolean readFrame(DataInputStream in, byte[] buffer) throws IOException {
+        try {
+            in.readFully(buffer);
+            return true;
+        } catch (EOFException e) {
+            return false; // A partial frame at the end of the file is ignored
+        }
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Statistics of a single run
+     */
+    public static class Result {
+        private final LatencyHistogram mLatency = new LatencyHistogram();
+        private long mFrames;
+        private long mElapsed;
+
+        /**
+         * @return number of replayed frames
+         */
+        public long getFrames() {
+            return mFrames;
+        }
+
+        /**
+         * @return duration of the whole run in nanoseconds
+         */
+        public long getElapsed() {
+            return mElapsed;
+        }
+
+        /**
+         * @return processed frames per second
+         */
+        public double getThroughput() {
+            return mElapsed == 0 ? 0 : mFrames * 1e9 / mElapsed;
+        }
+
+        /**
+         * @return per-frame latencies
+         */
+        public LatencyHistogram getLatency() {
+            return mLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d frames in %.1f ms, %.2f fps, latency p50 %.1f ms p95 %.1f ms p99 %.1f ms max %.1f ms",
+                    mFrames, mElapsed / 1e6, getThroughput(),
+                    mLatency.getPercentile(50) / 1e6, mLatency.getPercentile(95) / 1e6,
+                    mLatency.getPercentile(99) / 1e6, mLatency.getMax() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.facerecognition;
+
+import org.opencv.core.Mat;
+
+/**
+ * Consumer of the output of a FramePipeline, e.g. the screen or a recorder.
+ */
+public interface FrameSink {
+
+    /**
+     * Called before the first frame
+     * @param width - width of the frames
+     * @param height - height of the frames
+     */
+    public void onStarted(int width, int height);
+
+    /**
+     * Consumes the output of the last stage of the pipeline
+     * @param frame - the output, only valid during this call
+     * @param captureTime - System.nanoTime() when the frame was received by the pipeline
+     */
+    public void onFrame(Mat frame, long captureTime);
+
+    /**
+     * Called after the last frame
+     */
+    public void onStopped();
+}
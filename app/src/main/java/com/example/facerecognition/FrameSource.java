@@ -0,0 +1,27 @@
+package com.example.facerecognition;
+
+import com.example.facerecognition.CameraBridgeViewBase.CvCameraViewListener2;
+
+/**
+ * Anything that produces camera-like frames, e.g. a camera view or recorded frames.
+ * The frames are delivered through the same CvCameraViewListener2 as from the camera views,
+ * so a FramePipeline or any existing listener can be connected to any source.
+ * Frames passed to the listener are only valid until it returns, a source reuses its buffers.
+ */
+public interface FrameSource {
+
+    /**
+     * @param listener - listener the frames are delivered to, must be set before start()
+     */
+    public void setCvCameraViewListener(CvCameraViewListener2 listener);
+
+    /**
+     * Starts the delivery of the frames, onCameraViewStarted() is called first
+     */
+    public void start();
+
+    /**
+     * Stops the delivery of the frames, onCameraViewStopped() is called last
+     */
+    public void stop();
+}
@@ -0,0 +1,127 @@
+package com.example.facerecognition;
+
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import org.opencv.android.BaseLoaderCallback;
+import org.opencv.android.CameraGLSurfaceView;
+import org.opencv.android.LoaderCallbackInterface;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.io.IOException;
+
+/**
+ * Activity that keeps the camera preview on the GPU using CameraGLSurfaceView.
+ * Only a downscaled luminance image is read back for face detection, which
+ * runs on the DetectionWorker, and the faces are drawn as GL overlays.
+ * Long press returns to the MainActivity.
+ */
+public class GlCameraActivity extends AppCompatActivity {
+
+    private static final int DETECTION_WIDTH = FaceDetector.DEFAULT_DETECTION_WIDTH;
+
+    private CameraGLSurfaceView mCameraView;
+    private DetectionWorker mDetectionWorker;
+
+    /**
+     * Creates the GL camera view, the camera index is shared with the MainActivity
+     * @param savedInstanceState
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_gl_camera);
+
+        mCameraView = findViewById(R.id.gl_camera_view);
+        // The camera ids are the same as in org.opencv.android.CameraBridgeViewBase
+        mCameraView.setCameraIndex(PreferenceManager.getDefaultSharedPreferences(this)
+                .getInt("mCameraIndex", CameraBridgeViewBase.CAMERA_ID_FRONT));
+
+        final GestureDetector mGestureDetector = new GestureDetector(this, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+            @Override
+            public void onLongPress(MotionEvent e) {
+                // Back to the CPU preview
+                finish();
+            }
+        });
+
+        mCameraView.setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                return mGestureDetector.onTouchEvent(event);
+            }
+        });
+
+        if (!OpenCVLoader.initDebug()) {
+            OpenCVLoader.initAsync(OpenCVLoader.OPENCV_VERSION, this, baseCallback);
+        } else {
+            try {
+                baseCallback.onManagerConnected(LoaderCallbackInterface.SUCCESS);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mCameraView.onResume();
+    }
+
+    @Override
+    protected void onPause() {
+        mCameraView.onPause();
+        super.onPause();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mCameraView.disableView();
+        if (mDetectionWorker != null)
+            mDetectionWorker.stop();
+    }
+
+    /**
+     * Loads the cascade once OpenCV is available and starts the preview
+     */
+    private BaseLoaderCallback baseCallback = new BaseLoaderCallback(this) {
+        @Override
+        public void onManagerConnected(int status) throws IOException {
+            switch (status) {
+                case SUCCESS: {
+                    if (mDetectionWorker != null)
+                        return; // Already initialized
+
+                    CascadeClassifier classifier = CascadeLoader.load(GlCameraActivity.this, R.raw.haarcascade_frontalface_alt2, "haarcascade_frontalface_alt2.xml");
+                    if (classifier == null)
+                        return;
+
+                    FaceDetector faceDetector = new RoiFaceDetector(classifier);
+                    faceDetector.setDetectionWidth(DETECTION_WIDTH);
+                    mDetectionWorker = new DetectionWorker(new FaceTracker(faceDetector));
+                    mDetectionWorker.start();
+
+                    mCameraView.setCameraTextureListener(new GlFaceDetectionListener(mCameraView, mDetectionWorker, DETECTION_WIDTH));
+                    mCameraView.enableView();
+                }
+                break;
+
+                default: {
+                    super.onManagerConnected(status);
+                }
+            }
+        }
+    };
+}
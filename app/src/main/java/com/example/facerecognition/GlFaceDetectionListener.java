@@ -0,0 +1,307 @@
+package com.example.facerecognition;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import org.opencv.android.CameraGLSurfaceView;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Texture listener which keeps the preview on the GPU. The camera texture is never copied
+ * to the CPU as a whole, instead it is rendered into a small framebuffer as luminance and
+ * only that is read back and handed over to the detection worker. The latest faces are
+ * drawn as GL lines directly into the camera texture.
+ * The view also calls the listener when it redraws without a new camera frame, only new
+ * frames are read back and submitted.
+ * onCameraTexture() is called on the GL thread, so all of the GL objects are created and
+ * released there.
+ */
+public class GlFaceDetectionListener implements CameraGLSurfaceView.CameraTextureListener {
+
+    private static final String TAG = "GlFaceDetection";
+
+    private static final String VERTEX_SHADER = ""
+            + "attribute vec2 vPosition;\n"
+            + "attribute vec2 vTexCoord;\n"
+            + "varying vec2 texCoord;\n"
+            + "void main() {\n"
+            + "  texCoord = vTexCoord;\n"
+            + "  gl_Position = vec4(vPosition.x, vPosition.y, 0.0, 1.0);\n"
+            + "}";
+
+    // Every output texel packs the luminance of four neighbouring pixels into RGBA, so the
+    // readback has exactly one byte per pixel. Rows are flipped, so row 0 is the top of the image.
+    private static final String LUMINANCE_SHADER = ""
+            + "precision mediump float;\n"
+            + "uniform sampler2D sTexture;\n"
+            + "uniform float uPixelWidth;\n"
+            + "varying vec2 texCoord;\n"
+            + "const vec3 weights = vec3(0.299, 0.587, 0.114);\n"
+            + "float luma(float dx) {\n"
+            + "  return dot(texture2D(sTexture, vec2(texCoord.x + dx * uPixelWidth, 1.0 - texCoord.y)).rgb, weights);\n"
+            + "}\n"
+            + "void main() {\n"
+            + "  gl_FragColor = vec4(luma(-1.5), luma(-0.5), luma(0.5), luma(1.5));\n"
+            + "}";
+
+    private static final String VERTEX_SHADER_SOLID = ""
+            + "attribute vec2 vPosition;\n"
+            + "void main() {\n"
+            + "  gl_Position = vec4(vPosition.x, vPosition.y, 0.0, 1.0);\n"
+            + "}";
+
+    private static final String SOLID_SHADER = ""
+            + "precision mediump float;\n"
+            + "uniform vec4 uColor;\n"
+            + "void main() {\n"
+            + "  gl_FragColor = uColor;\n"
+            + "}";
+
+    private static final float[] VERTICES = { -1, -1, -1, 1, 1, -1, 1, 1 };
+    private static final float[] TEX_COORDS = { 0, 0, 0, 1, 1, 0, 1, 1 };
+    private static final float[] FACE_COLOR = { 1, 0, 0, 1 };
+
+    private final CameraGLSurfaceView mView;
+    private final DetectionWorker mDetectionWorker;
+    private final int mDetectionWidth;
+
+    private final FloatBuffer mVertices = createFloatBuffer(VERTICES);
+    private final FloatBuffer mTexCoords = createFloatBuffer(TEX_COORDS);
+    private final FloatBuffer mLineVertices = createFloatBuffer(new float[8]);
+    private final FaceRects mFaces = new FaceRects();
+
+    private int mLuminanceProgram, mSolidProgram;
+    private int mLumPosition, mLumTexCoord, mLumTexture, mLumPixelWidth;
+    private int mSolidPosition, mSolidColor;
+    private final int[] mLumTexture2D = {0};
+    private final int[] mLumFBO = {0};
+    private final int[] mOverlayFBO = {0};
+
+    private int mWidth, mHeight; // Size of the luminance image
+    private ByteBuffer mReadback;
+    private Mat mGray;
+    private long mLastFrame = -1;
+    private volatile boolean mReleaseRequested;
+
+    /**
+     * @param view - view the listener is set on, tells apart new frames from redraws
+     * @param detectionWorker - worker the luminance frames are submitted to, must be started by the caller
+     * @param detectionWidth - width of the luminance image, rounded down to a multiple of 4
+     */
+    public GlFaceDetectionListener(CameraGLSurfaceView view, DetectionWorker detectionWorker, int detectionWidth) {
+        mView = view;
+        mDetectionWorker = detectionWorker;
+        mDetectionWidth = detectionWidth & ~3;
+    }
+
+    @Override
+    public void onCameraViewStarted(int width, int height) {
+        Log.d(TAG, "Preview started " + width + "x" + height);
+    }
+
+    @Override
+    public void onCameraViewStopped() {
+        // Might not be called on the GL thread, the objects are released with the next texture
+        mReleaseRequested = true;
+    }
+
+    @Override
+    public boolean onCameraTexture(int texIn, int texOut, int width, int height) {
+        int detectionHeight = Math.round((float) height * mDetectionWidth / width);
+        if (mReleaseRequested) {
+            mReleaseRequested = false;
+            releaseGl();
+        }
+        if (mLuminanceProgram == 0 && !initPrograms())
+            return false;
+        if (mWidth != mDetectionWidth || mHeight != detectionHeight)
+            initLuminanceTarget(mDetectionWidth, detectionHeight);
+
+        long frame = mView.getFrameCount();
+        if (frame != mLastFrame) {
+            mLastFrame = frame;
+            submitLuminance(texIn);
+        }
+
+        // Faces -> GL lines on top of texIn, the view redraws texIn from the camera every time
+        FaceRects faces = mFaces;
+        mDetectionWorker.getFaces(faces);
+        if (faces.size() > 0) {
+            attachOverlay(texIn); // The renderer recreates its textures when the preview size changes
+            GLES20.glViewport(0, 0, width, height);
+            GLES20.glUseProgram(mSolidProgram);
+            GLES20.glEnableVertexAttribArray(mSolidPosition);
+            GLES20.glUniform4fv(mSolidColor, 1, FACE_COLOR, 0);
+            GLES20.glLineWidth(3);
+            for (int i = 0; i < faces.size(); i++)
+                drawRect(faces.getX(i), faces.getY(i), faces.getWidth(i), faces.getHeight(i));
+        }
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        return false; // The faces were drawn into texIn
+    }
+
+    // texIn -> packed luminance -> CPU -> detection worker
+    private void submitLuminance(int texIn) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mLumFBO[0]);
+        GLES20.glViewport(0, 0, mWidth / 4, mHeight);
+        GLES20.glUseProgram(mLuminanceProgram);
+        GLES20.glEnableVertexAttribArray(mLumPosition);
+        GLES20.glEnableVertexAttribArray(mLumTexCoord);
+        GLES20.glVertexAttribPointer(mLumPosition, 2, GLES20.GL_FLOAT, false, 4 * 2, mVertices);
+        GLES20.glVertexAttribPointer(mLumTexCoord, 2, GLES20.GL_FLOAT, false, 4 * 2, mTexCoords);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texIn);
+        GLES20.glUniform1i(mLumTexture, 0);
+        GLES20.glUniform1f(mLumPixelWidth, 1.0f / mWidth);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        mReadback.position(0);
+        GLES20.glReadPixels(0, 0, mWidth / 4, mHeight, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, mReadback);
+        mDetectionWorker.submit(mGray); // Copies mGray, so mReadback can be reused for the next frame
+    }
+
+    private void drawRect(int x, int y, int width, int height) {
+        // Row 0 of the luminance image is the top of the texture
+        float left = 2f * x / mWidth - 1;
+        float right = 2f * (x + width) / mWidth - 1;
+        float top = 1 - 2f * y / mHeight;
+        float bottom = 1 - 2f * (y + height) / mHeight;
+
+        mLineVertices.position(0);
+        mLineVertices.put(left).put(bottom).put(left).put(top).put(right).put(top).put(right).put(bottom);
+        mLineVertices.position(0);
+        GLES20.glVertexAttribPointer(mSolidPosition, 2, GLES20.GL_FLOAT, false, 4 * 2, mLineVertices);
+        GLES20.glDrawArrays(GLES20.GL_LINE_LOOP, 0, 4);
+    }
+
+    private boolean initPrograms() {
+        mLuminanceProgram = loadProgram(VERTEX_SHADER, LUMINANCE_SHADER);
+        mSolidProgram = loadProgram(VERTEX_SHADER_SOLID, SOLID_SHADER);
+        if (mLuminanceProgram == 0 || mSolidProgram == 0) {
+            releaseGl();
+            return false;
+        }
+
+        mLumPosition = GLES20.glGetAttribLocation(mLuminanceProgram, "vPosition");
+        mLumTexCoord = GLES20.glGetAttribLocation(mLuminanceProgram, "vTexCoord");
+        mLumTexture = GLES20.glGetUniformLocation(mLuminanceProgram, "sTexture");
+        mLumPixelWidth = GLES20.glGetUniformLocation(mLuminanceProgram, "uPixelWidth");
+        mSolidPosition = GLES20.glGetAttribLocation(mSolidProgram, "vPosition");
+        mSolidColor = GLES20.glGetUniformLocation(mSolidProgram, "uColor");
+        return true;
+    }
+
+    private void initLuminanceTarget(int width, int height) {
+        Log.d(TAG, "initLuminanceTarget(" + width + "x" + height + ")");
+        deleteLuminanceTarget();
+
+        GLES20.glGenTextures(1, mLumTexture2D, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mLumTexture2D[0]);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width / 4, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+
+        GLES20.glGenFramebuffers(1, mLumFBO, 0);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mLumFBO[0]);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, mLumTexture2D[0], 0);
+        int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE)
+            Log.e(TAG, "Luminance FBO failed, status: " + status);
+
+        mReadback = ByteBuffer.allocateDirect(width * height).order(ByteOrder.nativeOrder());
+        mGray = new Mat(height, width, CvType.CV_8UC1, mReadback);
+        mWidth = width;
+        mHeight = height;
+    }
+
+    private void attachOverlay(int texture) {
+        if (mOverlayFBO[0] == 0)
+            GLES20.glGenFramebuffers(1, mOverlayFBO, 0);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mOverlayFBO[0]);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texture, 0);
+    }
+
+    private void deleteLuminanceTarget() {
+        if (mLumFBO[0] != 0) {
+            GLES20.glDeleteFramebuffers(1, mLumFBO, 0);
+            mLumFBO[0] = 0;
+        }
+        if (mLumTexture2D[0] != 0) {
+            GLES20.glDeleteTextures(1, mLumTexture2D, 0);
+            mLumTexture2D[0] = 0;
+        }
+        if (mGray != null) {
+            mGray.release();
+            mGray = null;
+        }
+        mWidth = mHeight = 0;
+    }
+
+    private void releaseGl() {
+        deleteLuminanceTarget();
+        if (mOverlayFBO[0] != 0) {
+            GLES20.glDeleteFramebuffers(1, mOverlayFBO, 0);
+            mOverlayFBO[0] = 0;
+        }
+        if (mLuminanceProgram != 0) {
+            GLES20.glDeleteProgram(mLuminanceProgram);
+            mLuminanceProgram = 0;
+        }
+        if (mSolidProgram != 0) {
+            GLES20.glDeleteProgram(mSolidProgram);
+            mSolidProgram = 0;
+        }
+    }
+
+    private static FloatBuffer createFloatBuffer(float[] values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * Float.SIZE / Byte.SIZE).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+
+    private static int loadProgram(String vss, String fss) {
+        int vshader = loadShader(GLES20.GL_VERTEX_SHADER, vss);
+        int fshader = loadShader(GLES20.GL_FRAGMENT_SHADER, fss);
+        if (vshader == 0 || fshader == 0) {
+            GLES20.glDeleteShader(vshader);
+            GLES20.glDeleteShader(fshader);
+            return 0;
+        }
+
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vshader);
+        GLES20.glAttachShader(program, fshader);
+        GLES20.glLinkProgram(program);
+        GLES20.glDeleteShader(vshader);
+        GLES20.glDeleteShader(fshader);
+
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            Log.e(TAG, "Could not link shader program: " + GLES20.glGetProgramInfoLog(program));
+            GLES20.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+
+    private static int loadShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            Log.e(TAG, "Could not compile shader: " + GLES20.glGetShaderInfoLog(shader));
+            GLES20.glDeleteShader(shader);
+            return 0;
+        }
+        return shader;
+    }
+}
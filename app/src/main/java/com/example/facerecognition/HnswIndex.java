@@ -0,0 +1,490 @@
+package com.example.facerecognition;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Approximate nearest neighbor index of face embeddings, a Hierarchical Navigable Small World
+ * graph (Malkov and Yashunin). Every embedding is a node linked to its closest nodes, upper
+ * layers hold exponentially fewer nodes with longer links, so a search descends greedily from
+ * the top and only visits a small part of the gallery.
+ * Everything is kept in primitive arrays: the embeddings back to back in a float array and the
+ * links of a node in fixed-size int blocks, so no objects are created per node or per search.
+ * The embeddings have to be L2 normalized, the distance is 1 - cosine similarity.
+ * setEf() trades recall for latency, larger values visit more nodes and miss less neighbors.
+ * Removed nodes stay in the graph to keep it connected: a search still walks through them but
+ * only collects the other nodes, so it returns k results as long as there are k live ones.
+ * Once half of the nodes are removed the graph is rebuilt without them, see compact().
+ * Instances are not thread safe.
+ */
+public class HnswIndex {
+
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 100;
+    public static final int DEFAULT_EF = 50;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int mDimension;
+    private final int mM; // Links per node on the upper layers
+    private final int mM0; // Links per node on the bottom layer
+    private final int mEfConstruction;
+    private final double mLevelMultiplier;
+    private final Random mRandom = new Random(42);
+    private int mEf = DEFAULT_EF;
+
+    private float[] mVectors;
+    private int[] mLabels;
+    private boolean[] mRemoved;
+    private int[] mLinks0; // Per node: count followed by mM0 neighbors
+    private int[][] mUpperLinks; // Per node: for each upper layer count followed by mM neighbors
+    private int mCount;
+    private int mRemovedCount;
+    private int mEntryPoint = -1;
+    private int mMaxLevel = -1;
+
+    // Search state, reused by every search
+    private int[] mVisited;
+    private int mVisitMark;
+    private final Heap mCandidates = new Heap(false);
+    private final Heap mResults = new Heap(true);
+    private final Heap mSelected = new Heap(false);
+    private int[] mScratch = new int[0];
+    private int[] mPruned = new int[0];
+
+    /**
+     * @param dimension - length of the embeddings
+     */
+    public HnswIndex(int dimension) {
+        this(dimension, DEFAULT_M, DEFAULT_EF_CONSTRUCTION);
+    }
+
+    /**
+     * @param dimension - length of the embeddings
+     * @param m - number of links per node, more links improve recall at the cost of memory and time
+     * @param efConstruction - size of the candidate list when inserting, larger values build a better graph
+     */
+    public HnswIndex(int dimension, int m, int efConstruction) {
+        mDimension = dimension;
+        mM = m;
+        mM0 = m * 2;
+        mEfConstruction = Math.max(efConstruction, m);
+        mLevelMultiplier = 1 / Math.log(m);
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param ef - size of the candidate list when searching, at least the number of results
+     */
+    public void setEf(int ef) {
+        mEf = ef;
+    }
+
+    public int getEf() {
+        return mEf;
+    }
+
+    public int getDimension() {
+        return mDimension;
+    }
+
+    /**
+     * @return number of embeddings which were not removed
+     */
+    public int size() {
+        return mCount - mRemovedCount;
+    }
+
+    /**
+     * Inserts an embedding
+     * @param label - returned by the searches, e.g. the id of the person
+     * @param embedding - normalized embedding
+     * @param offset - position of the embedding in the array
+     * @return number of the node, it changes when the index is compacted
+     */
+    public int add(int label, float[] embedding, int offset) {
+        if (mCount == mLabels.length)
+            grow(mLabels.length * 2);
+
+        int node = mCount++;
+        System.arraycopy(embedding, offset, mVectors, node * mDimension, mDimension);
+        mLabels[node] = label;
+        mRemoved[node] = false;
+        int level = (int) (-Math.log(1 - mRandom.nextDouble()) * mLevelMultiplier);
+        mLinks0[node * (mM0 + 1)] = 0;
+        mUpperLinks[node] = level > 0 ? new int[level * (mM + 1)] : null;
+
+        if (mEntryPoint < 0) {
+            mEntryPoint = node;
+            mMaxLevel = level;
+            return node;
+        }
+
+        float[] query = mVectors;
+        int queryOffset = node * mDimension;
+        int entry = mEntryPoint;
+        for (int layer = mMaxLevel; layer > level; layer--)
+            entry = greedyClosest(query, queryOffset, entry, layer);
+
+        for (int layer = Math.min(level, mMaxLevel); layer >= 0; layer--) {
+            searchLayer(query, queryOffset, entry, mEfConstruction, layer, false);
+            entry = closestResult();
+            int maxLinks = layer == 0 ? mM0 : mM;
+            int count = selectNeighbors(mM);
+            for (int i = 0; i < count; i++) {
+                int neighbor = mScratch[i];
+                addLink(node, neighbor, layer);
+                connectBack(neighbor, node, layer, maxLinks);
+            }
+        }
+
+        if (level > mMaxLevel) {
+            mMaxLevel = level;
+            mEntryPoint = node;
+        }
+        return node;
+    }
+
+    /**
+     * Removes all of the embeddings with the label from the results. The index is compacted
+     * once more than half of its nodes are removed.
+     * @param label - label the embeddings were added with
+     * @return number of removed embeddings
+     */
+    public int remove(int label) {
+        int removed = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (mLabels[i] == label && !mRemoved[i]) {
+                mRemoved[i] = true;
+                removed++;
+            }
+        }
+        mRemovedCount += removed;
+        if (mRemovedCount * 2 > mCount)
+            compact();
+        return removed;
+    }
+
+    /**
+     * Rebuilds the graph from the embeddings which were not removed, which frees the slots of
+     * the removed ones and takes them out of the searches. The nodes are numbered anew.
+     */
+    public void compact() {
+        if (mRemovedCount == 0)
+            return;
+
+        float[] vectors = mVectors;
+        int[] labels = mLabels;
+        boolean[] removed = mRemoved;
+        int count = mCount;
+        allocate(Math.max(INITIAL_CAPACITY, mLabels.length));
+        mCount = 0;
+        mRemovedCount = 0;
+        mEntryPoint = -1;
+        mMaxLevel = -1;
+        mVisitMark = 0;
+        for (int i = 0; i < count; i++) {
+            if (!removed[i])
+                add(labels[i], vectors, i * mDimension);
+        }
+    }
+
+    /**
+     * Finds the approximately closest embeddings
+     * @param query - normalized embedding
+     * @param offset - position of the embedding in the array
+     * @param k - maximal number of results
+     * @param labels - receives the labels of the results, from the closest
+     * @param similarities - receives the cosine similarities of the results
+     * @return number of results
+     */
+    public int search(float[] query, int offset, int k, int[] labels, float[] similarities) {
+        if (mEntryPoint < 0 || k <= 0)
+            return 0;
+
+        int entry = mEntryPoint;
+        for (int layer = mMaxLevel; layer > 0; layer--)
+            entry = greedyClosest(query, offset, entry, layer);
+
+        int ef = Math.max(mEf, k);
+        searchLayer(query, offset, entry, ef, 0, mRemovedCount > 0);
+
+        // The results heap pops the farthest first
+        while (mResults.size() > k)
+            mResults.pop();
+        int found = mResults.size();
+        for (int i = found - 1; i >= 0; i--) {
+            similarities[i] = 1 - mResults.topKey();
+            labels[i] = mLabels[mResults.pop()];
+        }
+        return found;
+    }
+
+    private float distance(float[] query, int offset, int node) {
+        return 1 - FaceGallery.dot(query, offset, mVectors, node * mDimension, mDimension);
+    }
+
+    private float distance(int a, int b) {
+        return 1 - FaceGallery.dot(mVectors, a * mDimension, mVectors, b * mDimension, mDimension);
+    }
+
+    // Greedy walk to the node closest to the query on a layer
+    private int greedyClosest(float[] query, int offset, int entry, int layer) {
+        int current = entry;
+        float currentDistance = distance(query, offset, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] links = links(current, layer);
+            int base = linkBase(current, layer);
+            int count = links[base];
+            for (int i = 1; i <= count; i++) {
+                int neighbor = links[base + i];
+                float d = distance(query, offset, neighbor);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on a layer, leaves the ef closest nodes in mResults. With liveOnly the removed
+     * nodes are still followed but not collected, like in hnswlib, so they keep the graph
+     * connected without taking up places of the results. As they never fill the results, the
+     * search then goes on until it has found ef live nodes or run out of candidates.
+     */
+    private void searchLayer(float[] query, int offset, int entry, int ef, int layer, boolean liveOnly) {
+        int mark = nextVisitMark();
+        mCandidates.clear();
+        mResults.clear();
+
+        float entryDistance = distance(query, offset, entry);
+        mVisited[entry] = mark;
+        mCandidates.push(entryDistance, entry);
+        if (!liveOnly || !mRemoved[entry])
+            mResults.push(entryDistance, entry);
+
+        while (mCandidates.size() > 0) {
+            float candidateDistance = mCandidates.topKey();
+            if (mResults.size() >= ef && candidateDistance > mResults.topKey())
+                break;
+            int candidate = mCandidates.pop();
+
+            int[] links = links(candidate, layer);
+            int base = linkBase(candidate, layer);
+            int count = links[base];
+            for (int i = 1; i <= count; i++) {
+                int neighbor = links[base + i];
+                if (mVisited[neighbor] == mark)
+                    continue;
+                mVisited[neighbor] = mark;
+
+                float d = distance(query, offset, neighbor);
+                if (mResults.size() < ef || d < mResults.topKey()) {
+                    mCandidates.push(d, neighbor);
+                    if (!liveOnly || !mRemoved[neighbor]) {
+                        mResults.push(d, neighbor);
+                        if (mResults.size() > ef)
+                            mResults.pop();
+                    }
+                }
+            }
+        }
+    }
+
+    private int closestResult() {
+        int closest = -1;
+        float closestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < mResults.size(); i++) {
+            if (mResults.keyAt(i) < closestDistance) {
+                closestDistance = mResults.keyAt(i);
+                closest = mResults.valueAt(i);
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Picks up to m neighbors out of mResults with the heuristic of the paper: a candidate is only
+     * linked if it is closer to the new node than to any neighbor picked so far, which keeps links
+     * pointing in different directions. The picked nodes are left in mScratch.
+     */
+    private int selectNeighbors(int m) {
+        mSelected.clear();
+        for (int i = 0; i < mResults.size(); i++)
+            mSelected.push(mResults.keyAt(i), mResults.valueAt(i));
+        ensureScratch(m);
+        return selectFrom(mSelected, m, mScratch);
+    }
+
+    // Consumes the min-heap of candidates keyed by their distance to the base node
+    private int selectFrom(Heap candidates, int m, int[] selected) {
+        int count = 0;
+        while (candidates.size() > 0 && count < m) {
+            float d = candidates.topKey();
+            int candidate = candidates.pop();
+            boolean good = true;
+            for (int i = 0; i < count && good; i++)
+                good = distance(candidate, selected[i]) >= d;
+            if (good)
+                selected[count++] = candidate;
+        }
+        return count;
+    }
+
+    private void addLink(int node, int neighbor, int layer) {
+        int[] links = links(node, layer);
+        int base = linkBase(node, layer);
+        links[base + 1 + links[base]++] = neighbor;
+    }
+
+    private void connectBack(int neighbor, int node, int layer, int maxLinks) {
+        int[] links = links(neighbor, layer);
+        int base = linkBase(neighbor, layer);
+        int count = links[base];
+        if (count < maxLinks) {
+            links[base + 1 + count] = node;
+            links[base] = count + 1;
+            return;
+        }
+
+        // Full, keep the best of the current links and the new one. mScratch still holds the
+        // neighbors of the new node, so the selection goes into a separate array.
+        if (mPruned.length < maxLinks)
+            mPruned = new int[maxLinks];
+        mSelected.clear();
+        mSelected.push(distance(neighbor, node), node);
+        for (int i = 1; i <= count; i++)
+            mSelected.push(distance(neighbor, links[base + i]), links[base + i]);
+        int kept = selectFrom(mSelected, maxLinks, mPruned);
+        System.arraycopy(mPruned, 0, links, base + 1, kept);
+        links[base] = kept;
+    }
+
+    private int[] links(int node, int layer) {
+        return layer == 0 ? mLinks0 : mUpperLinks[node];
+    }
+
+    private int linkBase(int node, int layer) {
+        return layer == 0 ? node * (mM0 + 1) : (layer - 1) * (mM + 1);
+    }
+
+    private int nextVisitMark() {
+        if (++mVisitMark == Integer.MAX_VALUE) {
+            Arrays.fill(mVisited, 0);
+            mVisitMark = 1;
+        }
+        return mVisitMark;
+    }
+
+    private void ensureScratch(int size) {
+        if (mScratch.length < size)
+            mScratch = new int[size];
+    }
+
+    private void allocate(int capacity) {
+        mVectors = new float[capacity * mDimension];
+        mLabels = new int[capacity];
+        mRemoved = new boolean[capacity];
+        mLinks0 = new int[capacity * (mM0 + 1)];
+        mUpperLinks = new int[capacity][];
+        mVisited = new int[capacity];
+    }
+
+    private void grow(int capacity) {
+        float[] vectors = mVectors;
+        int[] labels = mLabels;
+        boolean[] removed = mRemoved;
+        int[] links0 = mLinks0;
+        int[][] upperLinks = mUpperLinks;
+        allocate(capacity);
+        System.arraycopy(vectors, 0, mVectors, 0, mCount * mDimension);
+        System.arraycopy(labels, 0, mLabels, 0, mCount);
+        System.arraycopy(removed, 0, mRemoved, 0, mCount);
+        System.arraycopy(links0, 0, mLinks0, 0, mCount * (mM0 + 1));
+        System.arraycopy(upperLinks, 0, mUpperLinks, 0, mCount);
+        mVisitMark = 0;
+    }
+
+    /**
+     * Binary heap of int values keyed by float distances
+     */
+    private static class Heap {
+        private final boolean mMax;
+        private float[] mKeys = new float[64];
+        private int[] mValues = new int[64];
+        private int mSize;
+
+        Heap(boolean max) {
+            mMax = max;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        void clear() {
+            mSize = 0;
+        }
+
+        float topKey() {
+            return mKeys[0];
+        }
+
+        float keyAt(int i) {
+            return mKeys[i];
+        }
+
+        int valueAt(int i) {
+            return mValues[i];
+        }
+
+        void push(float key, int value) {
+            if (mSize == mKeys.length) {
+                mKeys = Arrays.copyOf(mKeys, mSize * 2);
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            int i = mSize++;
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (!before(key, mKeys[parent]))
+                    break;
+                mKeys[i] = mKeys[parent];
+                mValues[i] = mValues[parent];
+                i = parent;
+            }
+            mKeys[i] = key;
+            mValues[i] = value;
+        }
+
+        int pop() {
+            int top = mValues[0];
+            float key = mKeys[--mSize];
+            int value = mValues[mSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= mSize)
+                    break;
+                if (child + 1 < mSize && before(mKeys[child + 1], mKeys[child]))
+                    child++;
+                if (!before(mKeys[child], key))
+                    break;
+                mKeys[i] = mKeys[child];
+                mValues[i] = mValues[child];
+                i = child;
+            }
+            mKeys[i] = key;
+            mValues[i] = value;
+            return top;
+        }
+
+        private boolean before(float a, float b) {
+            return mMax ? a > b : a < b;
+        }
+    }
+}
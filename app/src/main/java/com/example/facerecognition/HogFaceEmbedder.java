@@ -0,0 +1,64 @@
+package com.example.facerecognition;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.HOGDescriptor;
+
+import java.util.List;
+
+/**
+ * FaceEmbedder based on a HOG descriptor of the face crop scaled to a fixed size.
+ * It is far less discriminative than a network, but needs no model, so it serves as
+ * a fallback when no recognition model is available on the device.
+ * Instances are not thread safe.
+ */
+public class HogFaceEmbedder implements FaceEmbedder {
+
+    private static final int FACE_SIZE = 64;
+
+    private final HOGDescriptor mHog = new HOGDescriptor(new Size(FACE_SIZE, FACE_SIZE),
+            new Size(16, 16), new Size(8, 8), new Size(8, 8), 9);
+    private final int mDimension = (int) mHog.getDescriptorSize();
+    private final Size mFaceSize = new Size(FACE_SIZE, FACE_SIZE);
+    private final Mat mGray = new Mat();
+    private final Mat mScaled = new Mat();
+    private final MatOfFloat mDescriptor = new MatOfFloat();
+    private final float[] mValues = new float[mDimension];
+
+    @Override
+    public int getDimension() {
+        return mDimension;
+    }
+
+    @Override
+    public void embed(Mat face, float[] embedding, int offset) {
+        Mat gray = face;
+        if (face.channels() != 1) {
+            Imgproc.cvtColor(face, mGray, Imgproc.COLOR_RGBA2GRAY);
+            gray = mGray;
+        }
+        Imgproc.resize(gray, mScaled, mFaceSize, 0, 0, Imgproc.INTER_AREA);
+        Imgproc.equalizeHist(mScaled, mScaled); // Less sensitive to the lighting
+
+        mHog.compute(mScaled, mDescriptor);
+        mDescriptor.get(0, 0, mValues);
+        System.arraycopy(mValues, 0, embedding, offset, mDimension);
+        FaceGallery.normalize(embedding, offset, mDimension);
+    }
+
+    @Override
+    public void embed(List<Mat> faces, int count, float[] embeddings, int offset) {
+        int dimension = getDimension();
+        for (int i = 0; i < count; i++)
+            embed(faces.get(i), embeddings, offset + i * dimension);
+    }
+
+    @Override
+    public void release() {
+        mGray.release();
+        mScaled.release();
+        mDescriptor.release();
+    }
+}
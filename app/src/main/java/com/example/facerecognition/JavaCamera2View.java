@@ -0,0 +1,439 @@
+// Based on org.opencv.android.JavaCamera2View, ported to the improved CameraBridgeViewBase
+package com.example.facerecognition;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Surface;
+import android.view.ViewGroup.LayoutParams;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is an implementation of the Bridge View between OpenCV and the Camera2 API.
+ * Frames are received as YUV_420_888 images from an ImageReader, always the latest one.
+ * The gray frame wraps the Y plane buffer directly, so no pixels are copied for detection,
+ * and the image is closed as soon as the frame has been delivered and drawn.
+ * Requires API 21, use JavaCameraView on older devices.
+ */
+@TargetApi(21)
+public class JavaCamera2View extends CameraBridgeViewBase {
+
+    private static final String TAG = "JavaCamera2View";
+    private static final int MAX_IMAGES = 2;
+    private static final int IMAGE_FORMAT = ImageFormat.YUV_420_888;
+
+    private ImageReader mImageReader;
+
+    private CameraDevice mCameraDevice;
+    private CameraCaptureSession mCaptureSession;
+    private CaptureRequest.Builder mPreviewRequestBuilder;
+    private String mCameraID;
+    private android.util.Size mPreviewSize = new android.util.Size(-1, -1);
+
+    private HandlerThread mBackgroundThread;
+    private Handler mBackgroundHandler;
+
+    private JavaCamera2Frame mCameraFrame;
+    // Images skipped because a newer one was available, only counted on the background thread
+    private long mDroppedCount;
+    private volatile long mDroppedFrames; // Snapshot of mDroppedCount for other threads
+
+    @SuppressWarnings("unused")
+    public JavaCamera2View(Context context, int cameraId) {
+        super(context, cameraId);
+    }
+
+    public JavaCamera2View(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * @return number of images that were received from the camera but skipped for a newer one
+     */
+    @Override
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    private void startBackgroundThread() {
+        Log.d(TAG, "startBackgroundThread");
+        stopBackgroundThread();
+        mBackgroundThread = new HandlerThread("CameraBackground");
+        mBackgroundThread.start();
+        mBackgroundHandler = new Handler(mBackgroundThread.getLooper());
+    }
+
+    private void stopBackgroundThread() {
+        Log.d(TAG, "stopBackgroundThread");
+        if (mBackgroundThread == null)
+            return;
+        mBackgroundThread.quitSafely();
+        try {
+            mBackgroundThread.join();
+            mBackgroundThread = null;
+            mBackgroundHandler = null;
+        } catch (InterruptedException e) {
+            Log.e(TAG, "stopBackgroundThread", e);
+        }
+    }
+
+    protected boolean initializeCamera() {
+        Log.d(TAG, "Initialize camera2");
+        CameraManager manager = (CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE);
+        try {
+            String[] camList = manager.getCameraIdList();
+            if (camList.length == 0) {
+                Log.e(TAG, "Error: camera isn't detected.");
+                return false;
+            }
+            mCameraID = null;
+            if (mCameraIndex == CAMERA_ID_ANY || isEmulator()) { // Just open any camera on emulators
+                mCameraID = camList[0];
+            } else {
+                for (String cameraID : camList) {
+                    CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraID);
+                    Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+                    if (facing == null)
+                        continue;
+                    if ((mCameraIndex == CAMERA_ID_BACK && facing == CameraCharacteristics.LENS_FACING_BACK) ||
+                            (mCameraIndex == CAMERA_ID_FRONT && facing == CameraCharacteristics.LENS_FACING_FRONT)) {
+                        mCameraID = cameraID;
+                        break;
+                    }
+                }
+            }
+            if (mCameraID == null) {
+                if (mCameraIndex == CAMERA_ID_BACK)
+                    Log.e(TAG, "Back camera not found!");
+                else if (mCameraIndex == CAMERA_ID_FRONT)
+                    Log.e(TAG, "Front camera not found!");
+                return false;
+            }
+
+            Log.d(TAG, "Opening camera: " + mCameraID);
+            manager.openCamera(mCameraID, mStateCallback, mBackgroundHandler);
+            return true;
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "OpenCamera - Camera Access Exception", e);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "OpenCamera - Illegal Argument Exception", e);
+        } catch (SecurityException e) {
+            Log.e(TAG, "OpenCamera - Security Exception", e);
+        }
+        return false;
+    }
+
+    private final CameraDevice.StateCallback mStateCallback = new CameraDevice.StateCallback() {
+
+        @Override
+        public void onOpened(CameraDevice cameraDevice) {
+            mCameraDevice = cameraDevice;
+            createCameraPreviewSession();
+        }
+
+        @Override
+        public void onDisconnected(CameraDevice cameraDevice) {
+            cameraDevice.close();
+            mCameraDevice = null;
+        }
+
+        @Override
+        public void onError(CameraDevice cameraDevice, int error) {
+            cameraDevice.close();
+            mCameraDevice = null;
+        }
+    };
+
+    private final ImageReader.OnImageAvailableListener mImageListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image = reader.acquireNextImage();
+            if (image == null)
+                return;
+            // Skip to the newest image like acquireLatestImage(), but count the skipped ones.
+            // At most two images are held, which MAX_IMAGES allows.
+            Image next;
+            while ((next = reader.acquireNextImage()) != null) {
+                image.close();
+                image = next;
+                mDroppedCount++;
+            }
+            mDroppedFrames = mDroppedCount;
+            long captureTime = System.nanoTime(); // Image timestamps do not use the same clock
+
+            JavaCamera2Frame cameraFrame = mCameraFrame;
+            try {
+                if (cameraFrame != null) {
+                    cameraFrame.setImage(image);
+                    deliverAndDrawFrame(cameraFrame, captureTime);
+                    cameraFrame.setImage(null);
+                }
+            } finally {
+                image.close(); // Give the buffer back to the camera as soon as possible
+            }
+        }
+    };
+
+    private void createCameraPreviewSession() {
+        final int w = mPreviewSize.getWidth(), h = mPreviewSize.getHeight();
+        Log.d(TAG, "createCameraPreviewSession(" + w + "x" + h + ")");
+        if (w < 0 || h < 0)
+            return;
+        try {
+            if (mCameraDevice == null) {
+                Log.e(TAG, "createCameraPreviewSession: camera isn't opened");
+                return;
+            }
+            if (mCaptureSession != null) {
+                Log.e(TAG, "createCameraPreviewSession: mCaptureSession is already started");
+                return;
+            }
+
+            mImageReader = ImageReader.newInstance(w, h, IMAGE_FORMAT, MAX_IMAGES);
+            mImageReader.setOnImageAvailableListener(mImageListener, mBackgroundHandler);
+            Surface surface = mImageReader.getSurface();
+
+            mPreviewRequestBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            mPreviewRequestBuilder.addTarget(surface);
+
+            mCameraDevice.createCaptureSession(Arrays.asList(surface),
+                    new CameraCaptureSession.StateCallback() {
+                        @Override
+                        public void onConfigured(CameraCaptureSession cameraCaptureSession) {
+                            Log.d(TAG, "createCaptureSession::onConfigured");
+                            if (mCameraDevice == null)
+                                return; // camera is already closed
+                            mCaptureSession = cameraCaptureSession;
+                            try {
+                                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
+                                        CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO);
+                                mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(), null, mBackgroundHandler);
+                                Log.d(TAG, "CameraPreviewSession has been started");
+                            } catch (Exception e) {
+                                Log.e(TAG, "createCaptureSession failed", e);
+                            }
+                        }
+
+                        @Override
+                        public void onConfigureFailed(CameraCaptureSession cameraCaptureSession) {
+                            Log.e(TAG, "createCameraPreviewSession failed");
+                        }
+                    },
+                    null
+            );
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "createCameraPreviewSession", e);
+        }
+    }
+
+    @Override
+    protected void disconnectCamera() {
+        Log.d(TAG, "Disconnecting from camera");
+        try {
+            CameraDevice c = mCameraDevice;
+            mCameraDevice = null;
+            if (mCaptureSession != null) {
+                mCaptureSession.close();
+                mCaptureSession = null;
+            }
+            if (c != null)
+                c.close();
+        } finally {
+            stopBackgroundThread(); // No more frames are delivered after this
+            if (mImageReader != null) {
+                mImageReader.close();
+                mImageReader = null;
+            }
+            if (mCameraFrame != null) {
+                mCameraFrame.release();
+                mCameraFrame = null;
+            }
+        }
+    }
+
+    public static class JavaCameraSizeAccessor implements ListItemAccessor {
+
+        @Override
+        public int getWidth(Object obj) {
+            android.util.Size size = (android.util.Size) obj;
+            return size.getWidth();
+        }
+
+        @Override
+        public int getHeight(Object obj) {
+            android.util.Size size = (android.util.Size) obj;
+            return size.getHeight();
+        }
+    }
+
+    private boolean calcPreviewSize(final int width, final int height) {
+        Log.d(TAG, "calcPreviewSize: " + width + "x" + height);
+        if (mCameraID == null) {
+            Log.e(TAG, "Camera isn't initialized!");
+            return false;
+        }
+        CameraManager manager = (CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE);
+        try {
+            CameraCharacteristics characteristics = manager.getCameraCharacteristics(mCameraID);
+            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            if (map == null)
+                return false;
+            List<android.util.Size> sizes = Arrays.asList(map.getOutputSizes(ImageReader.class));
+            /* Select the size that fits surface considering maximum size allowed */
+            Size frameSize = calculateCameraFrameSize(sizes, new JavaCameraSizeAccessor(), width, height);
+            Log.d(TAG, "Set preview size to " + frameSize.width + "x" + frameSize.height);
+            if (mPreviewSize.getWidth() == frameSize.width && mPreviewSize.getHeight() == frameSize.height)
+                return false;
+            mPreviewSize = new android.util.Size((int) frameSize.width, (int) frameSize.height);
+            return true;
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "calcPreviewSize - Camera Access Exception", e);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "calcPreviewSize - Illegal Argument Exception", e);
+        } catch (SecurityException e) {
+            Log.e(TAG, "calcPreviewSize - Security Exception", e);
+        }
+        return false;
+    }
+
+    @Override
+    protected boolean connectCamera(int width, int height) {
+        Log.d(TAG, "Connecting to camera");
+        startBackgroundThread();
+        if (!initializeCamera())
+            return false;
+
+        boolean needReconfig = calcPreviewSize(width, height);
+        mFrameWidth = mPreviewSize.getWidth();
+        mFrameHeight = mPreviewSize.getHeight();
+        if (mFrameWidth <= 0 || mFrameHeight <= 0)
+            return false;
+
+        if ((getLayoutParams().width == LayoutParams.MATCH_PARENT) && (getLayoutParams().height == LayoutParams.MATCH_PARENT))
+            mScale = Math.min(((float)height)/mFrameHeight, ((float)width)/mFrameWidth);
+        else
+            mScale = 0;
+
+        if (mFpsMeter != null) {
+            mFpsMeter.setResolution(mFrameWidth, mFrameHeight);
+            mFpsMeter.reset(); // The pause while reconnecting is not a dropped frame
+        }
+        // The background thread was restarted and has no listener yet, so it does not count concurrently
+        mDroppedCount = 0;
+        mDroppedFrames = 0;
+
+        AllocateCache();
+        if (mCameraFrame == null)
+            mCameraFrame = new JavaCamera2Frame(); // OpenCV is guaranteed to be loaded by now
+
+        if (needReconfig) {
+            if (mCaptureSession != null) {
+                Log.d(TAG, "closing existing previewSession");
+                mCaptureSession.close();
+                mCaptureSession = null;
+            }
+            createCameraPreviewSession();
+        }
+        return true;
+    }
+
+    private class JavaCamera2Frame implements CvCameraViewFrame {
+        @Override
+        public Mat gray() {
+            if (mGray == null) {
+                // Wrap the Y plane, only the Mat header is allocated
+                Image.Plane plane = mImage.getPlanes()[0];
+                mGray = new Mat(mImage.getHeight(), mImage.getWidth(), CvType.CV_8UC1, plane.getBuffer(), plane.getRowStride());
+            }
+            return mGray;
+        }
+
+        @Override
+        public Mat rgba() {
+            Image.Plane[] planes = mImage.getPlanes();
+            int w = mImage.getWidth();
+            int h = mImage.getHeight();
+
+            if (planes[1].getPixelStride() == 2) { // Chroma channels are interleaved, so they can be wrapped as well
+                Mat y = gray();
+                Mat uv1 = new Mat(h / 2, w / 2, CvType.CV_8UC2, planes[1].getBuffer(), planes[1].getRowStride());
+                Mat uv2 = new Mat(h / 2, w / 2, CvType.CV_8UC2, planes[2].getBuffer(), planes[2].getRowStride());
+                if (uv2.dataAddr() - uv1.dataAddr() > 0)
+                    Imgproc.cvtColorTwoPlane(y, uv1, mRgba, Imgproc.COLOR_YUV2RGBA_NV12);
+                else
+                    Imgproc.cvtColorTwoPlane(y, uv2, mRgba, Imgproc.COLOR_YUV2RGBA_NV21);
+                uv1.release();
+                uv2.release();
+            } else { // Planar chroma, pack it into a reused I420 buffer
+                int size = w * (h + h / 2);
+                if (mYuvBytes == null || mYuvBytes.length != size) {
+                    mYuvBytes = new byte[size];
+                    mYuvFrameData.create(h + h / 2, w, CvType.CV_8UC1);
+                }
+                int offset = copyPlane(planes[0], w, h, 0);
+                offset = copyPlane(planes[1], w / 2, h / 2, offset);
+                copyPlane(planes[2], w / 2, h / 2, offset);
+                mYuvFrameData.put(0, 0, mYuvBytes);
+                Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+            }
+            return mRgba;
+        }
+
+        private int copyPlane(Image.Plane plane, int width, int height, int offset) {
+            ByteBuffer buffer = plane.getBuffer();
+            int rowStride = plane.getRowStride();
+            if (rowStride == width) {
+                buffer.get(mYuvBytes, offset, width * height);
+                return offset + width * height;
+            }
+            for (int i = 0; i < height; i++) {
+                buffer.position(i * rowStride);
+                buffer.get(mYuvBytes, offset, width);
+                offset += width;
+            }
+            return offset;
+        }
+
+        void setImage(Image image) {
+            if (mGray != null) {
+                mGray.release();
+                mGray = null;
+            }
+            mImage = image;
+        }
+
+        public void release() {
+            setImage(null);
+            mRgba.release();
+            mYuvFrameData.release();
+            mYuvBytes = null;
+        }
+
+        private Image mImage;
+        private Mat mGray;
+        private final Mat mRgba = new Mat();
+        private final Mat mYuvFrameData = new Mat();
+        private byte[] mYuvBytes;
+    }
+}
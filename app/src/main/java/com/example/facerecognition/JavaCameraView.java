@@ -20,6 +20,7 @@ import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * This class is an implementation of the Bridge View between OpenCV and Java Camera.
@@ -29,21 +30,34 @@ import java.util.List;
  * disconnectCamera - closes the camera and stops preview.
  * When frame is delivered via callback from Camera - it processed via OpenCV to be
  * converted to RGBA32 and then passed to the external callback for modifications if required.
+ * Frames are passed from the camera to the processing thread through a ring of preallocated
+ * callback buffers and Mats. The camera thread only writes and the processing thread only
+ * reads, so the ring is indexed without locks. When the ring is full the incoming frame is
+ * dropped, and the processing thread always skips to the newest frame, so the camera is never
+ * left waiting for a buffer to be returned.
  */
 public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallback {
 
     private static final int MAGIC_TEXTURE_ID = 10;
     private static final String TAG = "JavaCameraView";
 
-    private byte mBuffer[];
+    public static final int DEFAULT_BUFFER_COUNT = 3;
+
+    private byte[][] mBuffers;
     private Mat[] mFrameChain;
-    private int mChainIdx = 0;
+    private Mat mRgbaBuffer; // Shared by the frames of all of the slots
+    private long[] mCaptureTimes; // System.nanoTime() when the frame in the slot was received
+    private int mBufferCount = DEFAULT_BUFFER_COUNT;
+    private volatile long mWriteIdx; // Only written by the camera thread
+    private volatile long mReadIdx; // Only written by the processing thread
+    private volatile long mFullDrops; // Frames dropped because the ring was full
+    private volatile long mSkippedDrops; // Frames skipped because a newer one was available
     private Thread mThread;
-    private boolean mStopThread;
+    private volatile boolean mStopThread;
 
     protected Camera mCamera;
     protected JavaCameraFrame[] mCameraFrame;
-    private int mPreviewFormat = ImageFormat.NV21;
+    private int mImageFormat = ImageFormat.NV21;
 
     @SuppressWarnings("FieldCanBeLocal") // This slows down the frame rate significantly
     private SurfaceTexture mSurfaceTexture;
@@ -72,6 +86,23 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         super(context, attrs);
     }
 
+    /**
+     * Sets the number of frames that can be queued between the camera and the processing thread.
+     * Takes effect the next time the camera is connected.
+     * @param count - number of callback buffers, at least 2
+     */
+    public void setBufferCount(int count) {
+        mBufferCount = Math.max(2, count);
+    }
+
+    /**
+     * @return number of frames that were received from the camera but never processed
+     */
+    @Override
+    public long getDroppedFrames() {
+        return mFullDrops + mSkippedDrops;
+    }
+
     @SuppressLint("ObsoleteSdkInt")
     protected boolean initializeCamera(int width, int height) {
         Log.d(TAG, "Initialize java camera");
@@ -173,7 +204,7 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
                     mCamera.setParameters(params);
                     params = mCamera.getParameters();
-                    mPreviewFormat = params.getPreviewFormat();
+                    mImageFormat = params.getPreviewFormat();
 
                     mFrameWidth = params.getPreviewSize().width;
                     mFrameHeight = params.getPreviewSize().height;
@@ -185,25 +216,30 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
                     if (mFpsMeter != null) {
                         mFpsMeter.setResolution(mFrameWidth, mFrameHeight);
+                        mFpsMeter.reset(); // The pause while reconnecting is not a dropped frame
                     }
 
                     int size = mFrameWidth * mFrameHeight;
                     size  = size * ImageFormat.getBitsPerPixel(params.getPreviewFormat()) / 8;
-                    mBuffer = new byte[size];
 
-                    mCamera.addCallbackBuffer(mBuffer);
+                    mWriteIdx = mReadIdx = 0;
+                    mFullDrops = mSkippedDrops = 0;
+                    mBuffers = new byte[mBufferCount][];
+                    mFrameChain = new Mat[mBufferCount];
+                    mCaptureTimes = new long[mBufferCount];
+                    mCameraFrame = new JavaCameraFrame[mBufferCount];
+                    // Only one frame is processed at a time, so the slots can share the color buffer
+                    mRgbaBuffer = mMatPool.acquire(mFrameHeight, mFrameWidth, CvType.CV_8UC4);
+                    for (int i = 0; i < mBufferCount; i++) {
+                        mBuffers[i] = new byte[size];
+                        mCamera.addCallbackBuffer(mBuffers[i]);
+                        mFrameChain[i] = mMatPool.acquire(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
+                        mCameraFrame[i] = new JavaCameraFrame(mFrameChain[i], mRgbaBuffer, mFrameWidth, mFrameHeight);
+                    }
                     mCamera.setPreviewCallbackWithBuffer(this);
 
-                    mFrameChain = new Mat[2];
-                    mFrameChain[0] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
-                    mFrameChain[1] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
-
                     AllocateCache();
 
-                    mCameraFrame = new JavaCameraFrame[2];
-                    mCameraFrame[0] = new JavaCameraFrame(mFrameChain[0], mFrameWidth, mFrameHeight);
-                    mCameraFrame[1] = new JavaCameraFrame(mFrameChain[1], mFrameWidth, mFrameHeight);
-
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
                         mSurfaceTexture = new SurfaceTexture(MAGIC_TEXTURE_ID);
                         mCamera.setPreviewTexture(mSurfaceTexture);
@@ -234,19 +270,24 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                 mCamera.release();
             }
             mCamera = null;
+            if (mCameraFrame != null) {
+                for (JavaCameraFrame cameraFrame : mCameraFrame)
+                    cameraFrame.release();
+                mCameraFrame = null;
+            }
             if (mFrameChain != null) {
-                mFrameChain[0].release();
-                mFrameChain[1].release();
+                for (Mat mat : mFrameChain)
+                    mMatPool.release(mat);
+                mFrameChain = null;
             }
-            if (mCameraFrame != null) {
-                mCameraFrame[0].release();
-                mCameraFrame[1].release();
+            if (mRgbaBuffer != null) {
+                mMatPool.release(mRgbaBuffer);
+                mRgbaBuffer = null;
             }
+            mBuffers = null;
         }
     }
 
-    private boolean mCameraFrameReady = false;
-
     @Override
     protected boolean connectCamera(int width, int height) {
 
@@ -258,8 +299,6 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         if (!initializeCamera(width, height))
             return false;
 
-        mCameraFrameReady = false;
-
         /* now we can start update thread */
         Log.d(TAG, "Starting processing thread");
         mStopThread = false;
@@ -278,9 +317,8 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         try {
             mStopThread = true;
             Log.d(TAG, "Notify thread");
-            synchronized (this) {
-                this.notify();
-            }
+            if (mThread != null)
+                LockSupport.unpark(mThread);
             Log.d(TAG, "Waiting for thread");
             if (mThread != null)
                 mThread.join();
@@ -292,34 +330,42 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
         /* Now release camera */
         releaseCamera();
-
-        mCameraFrameReady = false;
     }
 
     @Override
     public void onPreviewFrame(byte[] frame, Camera arg1) {
         if (BuildConfig.DEBUG)
             Log.d(TAG, "Preview Frame received. Frame size: " + frame.length);
-        synchronized (this) {
-            mFrameChain[mChainIdx].put(0, 0, frame);
-            mCameraFrameReady = true;
-            this.notify();
+        Mat[] frameChain = mFrameChain;
+        Thread thread = mThread;
+        if (frameChain != null) {
+            long writeIdx = mWriteIdx;
+            if (writeIdx - mReadIdx >= frameChain.length) {
+                mFullDrops++; // The processing thread still holds every slot
+            } else {
+                int slot = (int) (writeIdx % frameChain.length);
+                mCaptureTimes[slot] = System.nanoTime();
+                frameChain[slot].put(0, 0, frame);
+                mWriteIdx = writeIdx + 1; // Publish the slot
+                if (thread != null)
+                    LockSupport.unpark(thread);
+            }
         }
         if (mCamera != null)
-            mCamera.addCallbackBuffer(mBuffer);
+            mCamera.addCallbackBuffer(frame); // Hand the same buffer back to the camera
     }
 
     private class JavaCameraFrame implements CvCameraViewFrame {
         @Override
         public Mat gray() {
-            return mYuvFrameData.submat(0, mHeight, 0, mWidth);
+            return mGray;
         }
 
         @Override
         public Mat rgba() {
-            if (mPreviewFormat == ImageFormat.NV21)
+            if (mImageFormat == ImageFormat.NV21)
                 Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
-            else if (mPreviewFormat == ImageFormat.YV12)
+            else if (mImageFormat == ImageFormat.YV12)
                 Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGB_I420, 4);  // COLOR_YUV2RGBA_YV12 produces inverted colors
             else
                 throw new IllegalArgumentException("Preview Format can be NV21 or YV12");
@@ -328,22 +374,23 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         }
 
         @SuppressWarnings("WeakerAccess")
-        public JavaCameraFrame(Mat Yuv420sp, int width, int height) {
+        public JavaCameraFrame(Mat Yuv420sp, Mat rgba, int width, int height) {
             super();
-            mWidth = width;
-            mHeight = height;
             mYuvFrameData = Yuv420sp;
-            mRgba = new Mat();
+            mGray = Yuv420sp.submat(0, height, 0, width);
+            mRgba = rgba;
         }
 
+        /**
+         * Releases the gray view of the frame, the frame data and the color buffer are owned by the view
+         */
         public void release() {
-            mRgba.release();
+            mGray.release();
         }
 
         private Mat mYuvFrameData;
+        private Mat mGray;
         private Mat mRgba;
-        private int mWidth;
-        private int mHeight;
     }
 
     private class CameraWorker implements Runnable {
@@ -351,27 +398,23 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         @Override
         public void run() {
             do {
-                boolean hasFrame = false;
-                synchronized (JavaCameraView.this) {
-                    try {
-                        while (!mCameraFrameReady && !mStopThread) {
-                            JavaCameraView.this.wait();
-                        }
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    if (mCameraFrameReady)
-                    {
-                        mChainIdx = 1 - mChainIdx;
-                        mCameraFrameReady = false;
-                        hasFrame = true;
-                    }
+                long writeIdx = mWriteIdx;
+                long readIdx = mReadIdx;
+                if (writeIdx == readIdx) {
+                    LockSupport.park(JavaCameraView.this); // Woken up by onPreviewFrame or disconnectCamera
+                    continue;
                 }
 
-                if (!mStopThread && hasFrame) {
-                    if (!mFrameChain[1 - mChainIdx].empty())
-                        deliverAndDrawFrame(mCameraFrame[1 - mChainIdx]);
+                // Skip to the newest frame and free the slots of the older ones
+                if (writeIdx - readIdx > 1) {
+                    mSkippedDrops += writeIdx - 1 - readIdx;
+                    mReadIdx = readIdx = writeIdx - 1;
                 }
+
+                int slot = (int) (readIdx % mFrameChain.length);
+                if (!mStopThread && !mFrameChain[slot].empty())
+                    deliverAndDrawFrame(mCameraFrame[slot], mCaptureTimes[slot]);
+                mReadIdx = readIdx + 1; // Give the slot back to the camera thread
             } while (!mStopThread);
             Log.d(TAG, "Finish processing thread");
         }
@@ -0,0 +1,143 @@
+package com.example.facerecognition;
+
+/**
+ * Fixed-size latency histogram. Samples are counted in linear buckets of
+ * BUCKET_NANOS up to MAX_TRACKED_NANOS, anything slower ends up in the last bucket,
+ * while the exact maximum is kept separately.
+ * Recording never allocates. A histogram is meant to have a single writer, readers on
+ * other threads might see slightly inconsistent values which is fine for statistics.
+ */
+public class LatencyHistogram {
+
+    public static final long BUCKET_NANOS = 100000L; // 0.1 ms
+    public static final long MAX_TRACKED_NANOS = 200000000L; // 200 ms
+    public static final int SUMMARY_PERCENTILE_COUNT = 3;
+    private static final double[] SUMMARY_PERCENTILES = { 50, 95, 99 };
+    private static final String[] SUMMARY_LABELS = { " p50 ", " p95 ", " p99 " };
+    private static final String MAX_LABEL = " max ";
+    // Longest text appendSummary() writes after the name
+    public static final int MAX_SUMMARY_LENGTH = (SUMMARY_PERCENTILE_COUNT + 1) * (MAX_LABEL.length() + CharFormat.MAX_TENTHS_LENGTH);
+
+    private static final int BUCKET_COUNT = (int) (MAX_TRACKED_NANOS / BUCKET_NANOS) + 1;
+
+    private final long[] mBuckets = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mMax;
+    private long mSum;
+
+    /**
+     * Records a single sample
+     * @param nanos - measured latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        int bucket = (int) Math.min(nanos / BUCKET_NANOS, BUCKET_COUNT - 1);
+        mBuckets[bucket]++;
+        mCount++;
+        mSum += nanos;
+        if (nanos > mMax)
+            mMax = nanos;
+    }
+
+    /**
+     * @return number of recorded samples
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the largest recorded sample in nanoseconds
+     */
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * @return the mean of the recorded samples in nanoseconds
+     */
+    public long getMean() {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    /**
+     * Returns the given percentile, with the resolution of a single bucket
+     * @param percentile - percentile in the range 0-100, e.g. 95 for p95
+     * @return upper bound of the bucket the percentile falls in, in nanoseconds
+     */
+    public long getPercentile(double percentile) {
+        long count = mCount;
+        if (count == 0)
+            return 0;
+
+        long target = target(percentile, count);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets[i];
+            if (seen >= target)
+                return Math.min((i + 1) * BUCKET_NANOS, mMax);
+        }
+        return mMax;
+    }
+
+    /**
+     * Computes several percentiles with a single pass over the buckets
+     * @param percentiles - percentiles in the range 0-100 in ascending order, e.g. 50, 95, 99
+     * @param values - receives the upper bound of the bucket of every percentile, in nanoseconds
+     */
+    public void getPercentiles(double[] percentiles, long[] values) {
+        long count = mCount;
+        int p = 0;
+        if (count > 0) {
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT && p < percentiles.length; i++) {
+                seen += mBuckets[i];
+                while (p < percentiles.length && seen >= target(percentiles[p], count))
+                    values[p++] = Math.min((i + 1) * BUCKET_NANOS, mMax);
+            }
+        }
+        for (; p < percentiles.length; p++)
+            values[p] = count == 0 ? 0 : mMax;
+    }
+
+    /**
+     * Writes the name followed by p50/p95/p99/max in milliseconds, e.g. "detect p50 4.1 p95 6.3 p99 9.0 max 12.4"
+     * @param buf - destination of at least the length of the name plus MAX_SUMMARY_LENGTH
+     * @param pos - position to start writing at
+     * @param name - name of the histogram
+     * @param percentiles - scratch array of SUMMARY_PERCENTILE_COUNT values, so nothing is allocated
+     * @return position after the last written character
+     */
+    public int appendSummary(char[] buf, int pos, String name, long[] percentiles) {
+        getPercentiles(SUMMARY_PERCENTILES, percentiles);
+        pos = CharFormat.append(buf, pos, name);
+        for (int i = 0; i < SUMMARY_PERCENTILE_COUNT; i++) {
+            pos = CharFormat.append(buf, pos, SUMMARY_LABELS[i]);
+            pos = appendMillis(buf, pos, percentiles[i]);
+        }
+        pos = CharFormat.append(buf, pos, MAX_LABEL);
+        return appendMillis(buf, pos, mMax);
+    }
+
+    private static int appendMillis(char[] buf, int pos, long nanos) {
+        return CharFormat.appendTenths(buf, pos, nanos / 100000L);
+    }
+
+    // Number of samples at or below the percentile
+    private static long target(double percentile, long count) {
+        long target = (long) Math.ceil(percentile / 100.0 * count);
+        return target < 1 ? 1 : target;
+    }
+
+    /**
+     * Removes all of the samples
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            mBuckets[i] = 0;
+        mCount = 0;
+        mMax = 0;
+        mSum = 0;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.facerecognition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Joins lists into a single String and splits them back, the way TinyDB stores lists in the
+ * shared preferences. join() and split() behave like android.text.TextUtils, but only use
+ * plain Java, so they can also be benchmarked on the JVM.
+ */
+public final class ListCodec {
+
+    /**
+     * The "‚‗‚" character is not a comma, it is the SINGLE LOW-9 QUOTATION MARK unicode 201A
+     * and unicode 2017 that are used for separating the items in a list.
+     */
+    public static final String SEPARATOR = "‚‗‚";
+
+    private ListCodec() {
+    }
+
+    /**
+     * Same as TextUtils.join(SEPARATOR, items)
+     * @param items - the items, converted with toString()
+     * @return the joined items
+     */
+    public static String join(List<?> items) {
+        StringBuilder sb = new StringBuilder();
+        boolean firstTime = true;
+        for (Object item : items) {
+            if (firstTime) {
+                firstTime = false;
+            } else {
+                sb.append(SEPARATOR);
+            }
+            sb.append(item);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Same as TextUtils.split(joined, SEPARATOR)
+     * @param joined - String returned by join()
+     * @return the items, none for an empty String
+     */
+    public static String[] split(String joined) {
+        if (joined.length() == 0) {
+            return new String[0];
+        } else {
+            return joined.split(SEPARATOR, -1); // The separator has no special meaning in a regular expression
+        }
+    }
+
+    /**
+     * @param joined - String returned by join()
+     * @return the items parsed as Integers
+     */
+    public static ArrayList<Integer> splitInts(String joined) {
+        String[] items = split(joined);
+        ArrayList<Integer> list = new ArrayList<Integer>(items.length);
+        for (String item : items)
+            list.add(Integer.parseInt(item));
+        return list;
+    }
+
+    /**
+     * @param joined - String returned by join()
+     * @return the items parsed as Longs
+     */
+    public static ArrayList<Long> splitLongs(String joined) {
+        String[] items = split(joined);
+        ArrayList<Long> list = new ArrayList<Long>(items.length);
+        for (String item : items)
+            list.add(Long.parseLong(item));
+        return list;
+    }
+
+    /**
+     * @param joined - String returned by join()
+     * @return the items parsed as Doubles
+     */
+    public static ArrayList<Double> splitDoubles(String joined) {
+        String[] items = split(joined);
+        ArrayList<Double> list = new ArrayList<Double>(items.length);
+        for (String item : items)
+            list.add(Double.parseDouble(item));
+        return list;
+    }
+
+    /**
+     * @param joined - String returned by join()
+     * @return the items
+     */
+    public static ArrayList<String> splitStrings(String joined) {
+        return new ArrayList<String>(Arrays.asList(split(joined)));
+    }
+}
@@ -1,48 +1,58 @@
 package com.example.facerecognition;
 
-import android.content.Context;
+import android.content.Intent;
 import android.content.SharedPreferences;
-import android.content.pm.ActivityInfo;
+import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.util.Log;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.SurfaceView;
 import android.view.View;
+import android.view.ViewGroup;
 
 import androidx.appcompat.app.AppCompatActivity;
 
 import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
-import org.opencv.core.Core;
-import org.opencv.core.Mat;
-import org.opencv.core.MatOfRect;
-import org.opencv.core.Point;
-import org.opencv.core.Rect;
-import org.opencv.core.Scalar;
-import org.opencv.imgproc.Imgproc;
 import org.opencv.objdetect.CascadeClassifier;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Main Activity class that handle the main activity layout, also
- * implements CameraBridgeViewBase.CVCameraViewListener2 make usage of
- * openCV camera view
+ * Main Activity class that handle the main activity layout. The frames of the
+ * openCV camera view go through a FramePipeline: the detection stage hands the
+ * gray frame over to the detection worker, the recognition stage recognizes the
+ * latest faces and the overlay stage draws them, each on its own thread, so the
+ * stages work at the same time. The identities are drawn by a FaceLabelOverlay.
+ * A single tap enrolls the largest face as a new person.
  */
-public class MainActivity extends AppCompatActivity implements CameraBridgeViewBase.CvCameraViewListener2 {
+public class MainActivity extends AppCompatActivity {
+
+    private static final String TAG = "MainActivity";
+    private static final String MODEL_FILE = "mobilefacenet.onnx"; // In the files directory
+    // The embeddings of different embedders can not be compared, so each has its own gallery
+    private static final String MODEL_GALLERY_FILE = "gallery_mobilefacenet.fgal";
+    private static final String HOG_GALLERY_FILE = "gallery_hog.fgal";
+    private static final float HOG_THRESHOLD = 0.8f;
 
     CameraBridgeViewBase mCameraView;
-    File cascadeFile;
     CascadeClassifier faceDetector;
+    FaceDetector mFaceDetector;
+    FaceTracker mFaceTracker;
+    FaceRecognizer mFaceRecognizer;
+    private File mGalleryFile;
     private SharedPreferences prefs;
 
-    private Mat mRGBa, mGray;
+    private final DetectionStage mDetectionStage = new DetectionStage();
+    private final RecognitionStage mRecognitionStage = new RecognitionStage(mDetectionStage);
+    private FramePipeline mPipeline;
+    private ExecutorService mPipelineExecutor;
 
     /**
      * Overridden onCreate method that handle app onCreate state, which
@@ -56,10 +66,26 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
         setContentView(R.layout.activity_main);
         prefs = PreferenceManager.getDefaultSharedPreferences(this);
 
-        mCameraView = findViewById(R.id.java_camera_view);
-        mCameraView.setCameraIndex(prefs.getInt("mCameraIndex", CameraBridgeViewBase.CAMERA_ID_FRONT));
+        mCameraView = createCameraView(prefs.getInt("mCameraIndex", CameraBridgeViewBase.CAMERA_ID_FRONT));
+        ViewGroup container = findViewById(R.id.camera_container);
+        container.addView(mCameraView, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
         mCameraView.setVisibility(SurfaceView.VISIBLE);
-        mCameraView.setCvCameraViewListener(this);
+        if (BuildConfig.DEBUG)
+            mCameraView.enableProfiler(true);
+
+        // The pipeline returns null to the view and draws the processed frames through the sink
+        mDetectionStage.setProfiler(mCameraView.getProfiler());
+        mPipeline = new FramePipeline()
+                .addProcessor(mDetectionStage)
+                .addProcessor(mRecognitionStage)
+                .addProcessor(new FaceOverlayStage(mDetectionStage))
+                .addSink(new CanvasFrameSink(mCameraView));
+        mCameraView.setCanvasOverlay(new FaceLabelOverlay(mRecognitionStage));
+        mPipelineExecutor = Executors.newFixedThreadPool(mPipeline.getStageCount());
+        // The overlay draws on the color frame, which the DNN embedder also uses
+        mPipeline.setExecutor(mPipelineExecutor).setCopyColor(true);
+        mCameraView.setCvCameraViewListener(mPipeline);
 
         final GestureDetector mGestureDetector = new GestureDetector(this, new GestureDetector.SimpleOnGestureListener() {
             @Override
@@ -67,11 +93,21 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
                 return true;
             }
             @Override
+            public boolean onSingleTapConfirmed(MotionEvent e) {
+                mRecognitionStage.enrollLargestFace();
+                return true;
+            }
+            @Override
             public boolean onDoubleTap(MotionEvent e) {
                 // Flip camera
                 mCameraView.flipCamera();
                 return true;
             }
+            @Override
+            public void onLongPress(MotionEvent e) {
+                // Switch to the OpenGL preview
+                startActivity(new Intent(MainActivity.this, GlCameraActivity.class));
+            }
         });
 
         mCameraView.setOnTouchListener(new View.OnTouchListener() {
@@ -94,106 +130,117 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
         }
     }
 
+    /**
+     * Creates the camera view for the device, the Camera2 API is used where it is available
+     * as it delivers the Y plane without a copy
+     * @param cameraIndex - one of the CameraBridgeViewBase.CAMERA_ID_* constants
+     * @return the view, not attached yet
+     */
+    private CameraBridgeViewBase createCameraView(int cameraIndex) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+            return new JavaCamera2View(this, cameraIndex);
+        return new JavaCameraView(this, cameraIndex);
+    }
+
     /**
      * onDestroy method that handles on destroy activity state.
-     * It is responsible for disabling the mCameraView
+     * It is responsible for disabling the mCameraView, which stops the pipeline
      */
     @Override
     public void onDestroy() {
         super.onDestroy();
         if (mCameraView != null)
             mCameraView.disableView();
+        if (mPipelineExecutor != null)
+            mPipelineExecutor.shutdown();
+        if (mFaceDetector != null)
+            mFaceDetector.release();
+        if (mFaceRecognizer != null)
+            mFaceRecognizer.release();
     }
 
     /**
-     * onCameraViewStarted method that sets mGray and mRGBa state
-     * after launching the Camera
-     * @param width -  the width of the frames that will be delivered
-     * @param height - the height of the frames that will be delivered
-     */
-    public void onCameraViewStarted(int width, int height) {
-        mGray = new Mat();
-        mRGBa = new Mat();
-    }
-
-    /**
-     * onCameraViewStopped is responsible for releasing the mGray and mRGBa
-     * global state when application is on hold.
+     * onPause method that stops the camera, which also stops the pipeline, and saves
+     * the faces enrolled since the start
      */
-    public void onCameraViewStopped() {
-        mGray.release();
-        mRGBa.release();
+    @Override
+    public void onPause() {
+        super.onPause();
+        if (mCameraView != null)
+            mCameraView.disableView();
+        // The pipeline is stopped, so the recognizer is not in use
+        if (mFaceRecognizer != null) {
+            try {
+                if (mFaceRecognizer.save(mGalleryFile))
+                    Log.i(TAG, "Saved the gallery to " + mGalleryFile);
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot save the gallery to " + mGalleryFile, e);
+            }
+        }
     }
 
     /**
-     * Method that takes every camera frame and
-     * sets its orientation, detects face, and draws the rectangle on them.
-     * @param inputFrame
-     * @return
+     * Creates the recognizer. The network is used once its model was copied into the files
+     * directory of the app, until then the HOG embedder, which needs no model. The faces
+     * saved by the embedder before are searched straight from the memory-mapped file.
+     * @return the recognizer
      */
-    @Override
-    public Mat onCameraFrame(CameraBridgeViewBase.CvCameraViewFrame inputFrame) {
-        Mat mGrayTmp = inputFrame.gray();
-        Mat mRgbaTmp = inputFrame.rgba();
-
-        // Flip image to get mirror effect
-        int orientation = mCameraView.getScreenOrientation();
-        if (mCameraView.isEmulator()) // Treat emulators as a special case
-            Core.flip(mRgbaTmp, mRgbaTmp, 1); // Flip along y-axis
-        else {
-            switch (orientation) { // RGB image
-                case ActivityInfo.SCREEN_ORIENTATION_PORTRAIT:
-                case ActivityInfo.SCREEN_ORIENTATION_REVERSE_PORTRAIT:
-                    if (mCameraView.mCameraIndex == CameraBridgeViewBase.CAMERA_ID_FRONT)
-                        Core.flip(mRgbaTmp, mRgbaTmp, 0); // Flip along x-axis
-                    else
-                        Core.flip(mRgbaTmp, mRgbaTmp, -1); // Flip along both axis
-                    break;
-                case ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE:
-                case ActivityInfo.SCREEN_ORIENTATION_REVERSE_LANDSCAPE:
-                    if (mCameraView.mCameraIndex == CameraBridgeViewBase.CAMERA_ID_FRONT)
-                        Core.flip(mRgbaTmp, mRgbaTmp, 1); // Flip along y-axis
-                    break;
-            }
-            switch (orientation) { // Grayscale image
-                case ActivityInfo.SCREEN_ORIENTATION_PORTRAIT:
-                    Core.transpose(mGrayTmp, mGrayTmp); // Rotate image
-                    if (mCameraView.mCameraIndex == CameraBridgeViewBase.CAMERA_ID_FRONT)
-                        Core.flip(mGrayTmp, mGrayTmp, -1); // Flip along both axis
-                    else
-                        Core.flip(mGrayTmp, mGrayTmp, 1); // Flip along y-axis
-                    break;
-
-                case ActivityInfo.SCREEN_ORIENTATION_REVERSE_PORTRAIT:
-                    Core.transpose(mGrayTmp, mGrayTmp); // Rotate image
-                    if (mCameraView.mCameraIndex == CameraBridgeViewBase.CAMERA_ID_BACK)
-                        Core.flip(mGrayTmp, mGrayTmp, 0); // Flip along x-axis
-                    break;
-                case ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE:
-                    if (mCameraView.mCameraIndex == CameraBridgeViewBase.CAMERA_ID_FRONT)
-                        Core.flip(mGrayTmp, mGrayTmp, 1); // Flip along y-axis
-                    break;
-                case ActivityInfo.SCREEN_ORIENTATION_REVERSE_LANDSCAPE:
-                    Core.flip(mGrayTmp, mGrayTmp, 0); // Flip along x-axis
-                    if (mCameraView.mCameraIndex == CameraBridgeViewBase.CAMERA_ID_BACK)
-                        Core.flip(mGrayTmp, mGrayTmp, 1); // Flip along y-axis
-                    break;
+    private FaceRecognizer loadRecognizer() {
+        File model = new File(getFilesDir(), MODEL_FILE);
+        FaceEmbedder embedder = null;
+        if (model.exists()) {
+            try {
+                embedder = DnnFaceEmbedder.fromOnnx(model.getPath());
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Cannot load the recognition model " + model, e);
             }
         }
 
-        mRGBa = mRgbaTmp;
-        mGray = mGrayTmp;
-
-        // face detecting code
-        MatOfRect faceDetections = new MatOfRect();
-        faceDetector.detectMultiScale(mRGBa, faceDetections);
+        FaceRecognizer recognizer;
+        if (embedder != null) {
+            recognizer = new FaceRecognizer(embedder, new FaceGallery(embedder.getDimension()));
+            mGalleryFile = new File(getFilesDir(), MODEL_GALLERY_FILE);
+        } else {
+            embedder = new HogFaceEmbedder();
+            recognizer = new FaceRecognizer(embedder, new FaceGallery(embedder.getDimension()));
+            recognizer.setThreshold(HOG_THRESHOLD);
+            mGalleryFile = new File(getFilesDir(), HOG_GALLERY_FILE);
+        }
+        recognizer.setCache(new RecognitionCache(embedder.getDimension()));
 
-        for (Rect rect: faceDetections.toArray()) {
-            // set graphical rectangle on detected face in camera mode
-            Imgproc.rectangle(mRGBa, new Point(rect.x, rect.y), new Point(rect.x + rect.width, rect.y + rect.height), new Scalar(255, 0, 0));
+        if (mGalleryFile.exists()) {
+            try {
+                MappedFaceGallery stored = MappedFaceGallery.open(mGalleryFile);
+                if (stored.getDimension() == embedder.getDimension())
+                    recognizer.setStoredGallery(stored);
+                else
+                    Log.w(TAG, "Gallery " + mGalleryFile + " was written by another embedder, it is ignored");
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot open the gallery " + mGalleryFile, e);
+            }
         }
+        return recognizer;
+    }
 
-        return mRGBa;
+    /**
+     * Loads the cascades that run next to the frontal one. The profile cascade runs both
+     * as is and mirrored, so profiles facing either way are found.
+     * @param frontal - the loaded frontal cascade
+     * @return the cascades, only the frontal one if the profile cascade could not be loaded
+     * @throws IOException if a cascade could not be copied
+     */
+    private CascadeGroup loadCascades(CascadeClassifier frontal) throws IOException {
+        CascadeGroup cascades = new CascadeGroup();
+        cascades.add(frontal, false);
+
+        // Each cascade needs its own classifier, as they run concurrently
+        CascadeClassifier profile = CascadeLoader.load(this, R.raw.haarcascade_profileface, "haarcascade_profileface.xml");
+        CascadeClassifier mirroredProfile = CascadeLoader.load(this, R.raw.haarcascade_profileface, "haarcascade_profileface.xml");
+        if (profile != null && mirroredProfile != null) {
+            cascades.add(profile, false);
+            cascades.add(mirroredProfile, true);
+        }
+        return cascades;
     }
 
     /**
@@ -238,37 +285,23 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
                     // algorithm in this case: Haarcascade from res/raw (haarcascade_frontalface_alt2.xml
                     // was shipped with OpenCV library
 
-                    InputStream inputStream = getResources().openRawResource(R.raw.haarcascade_frontalface_alt2);
-                    File cascadeDirectory = getDir("cascade", Context.MODE_PRIVATE);
-                    cascadeFile = new File(cascadeDirectory, "haarcascade_frontalface_alt2.xml");
-
-                    FileOutputStream fileOutputStream;
-
-                    try {
-                        fileOutputStream = new FileOutputStream(cascadeFile);
-                    } catch (FileNotFoundException e) {
-                        e.printStackTrace();
-                        return;
-                    }
-
-                    byte[] buffer = new byte[4096];
-                    int byteRead;
-
-                    while ((byteRead = inputStream.read(buffer)) != -1) {
-                        fileOutputStream.write(buffer, 0, byteRead);
-                    }
-
-                    inputStream.close();
-                    fileOutputStream.close();
-
-                    // Initialize faceDetector based on byte code from haarcascade file
-                    faceDetector = new CascadeClassifier(cascadeFile.getAbsolutePath());
-
-                    if (faceDetector.empty()) {
-                        faceDetector = null;
-                        return;
+                    // The detector is kept while the activity lives, it is only reset when the camera stops
+                    if (mFaceTracker == null) {
+                        faceDetector = CascadeLoader.load(MainActivity.this, R.raw.haarcascade_frontalface_alt2, "haarcascade_frontalface_alt2.xml");
+                        if (faceDetector == null)
+                            return;
+                        CascadeGroup cascades = loadCascades(faceDetector);
+                        if (cascades.size() > 1)
+                            mFaceDetector = new RoiFaceDetector(cascades);
+                        else
+                            mFaceDetector = new RoiFaceDetector(faceDetector);
+                        mFaceTracker = new FaceTracker(mFaceDetector);
+                        mDetectionStage.setTracker(mFaceTracker);
+
+                        mFaceRecognizer = loadRecognizer();
+                        // The network expects color, HOG works on the gray frame
+                        mRecognitionStage.setRecognizer(mFaceRecognizer, !(mFaceRecognizer.getEmbedder() instanceof HogFaceEmbedder));
                     }
-                    cascadeDirectory.delete();
 
                     // Enable java camera view
                     mCameraView.enableView();
@@ -0,0 +1,208 @@
+package com.example.facerecognition;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only gallery backed by a memory-mapped file, so a large gallery can be searched right
+ * after launch without parsing it or copying it to the heap. The pages are loaded by the OS
+ * on the first search and can be dropped again under memory pressure.
+ * The file is little endian and consists of:
+ * <pre>
+ *   header      HEADER_SIZE bytes: magic, version, dimension, count, then zeros
+ *   embeddings  count * dimension float32, normalized, one embedding after another
+ *   ids         count int32
+ * </pre>
+ * Files are written with write() from a FaceGallery. Instances are not thread safe.
+ */
+public class MappedFaceGallery {
+
+    public static final int MAGIC = 0x4C414746; // "FGAL" in little endian
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32; // Keeps the embeddings 16 byte aligned
+
+    private final int mDimension;
+    private final int mCount;
+    private final FloatBuffer mEmbeddings;
+    private final IntBuffer mIds;
+
+    private MappedFaceGallery(MappedByteBuffer buffer, int dimension, int count) {
+        mDimension = dimension;
+        mCount = count;
+        buffer.position(HEADER_SIZE);
+        mEmbeddings = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        buffer.position(HEADER_SIZE + count * dimension * 4);
+        mIds = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    /**
+     * Maps a gallery file. The mapping stays valid after the file is closed and is released
+     * when the gallery is garbage collected.
+     * @param file - file written by write()
+     * @return the gallery
+     * @throws IOException if the file cannot be read or is not a valid gallery
+     */
+    public static MappedFaceGallery open(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE)
+                throw new IOException("Gallery file is too short: " + file);
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC)
+                throw new IOException("Not a gallery file: " + file);
+            int version = buffer.getInt(4);
+            if (version != VERSION)
+                throw new IOException("Unsupported gallery version " + version + ": " + file);
+            int dimension = buffer.getInt(8);
+            int count = buffer.getInt(12);
+            if (dimension <= 0 || count < 0 || size != fileSize(dimension, count))
+                throw new IOException("Corrupted gallery file: " + file);
+
+            return new MappedFaceGallery(buffer, dimension, count);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Writes a gallery file. It is written next to the destination first and then renamed,
+     * so a crash while saving leaves the previous file intact.
+     * @param gallery - the embeddings to be stored
+     * @param file - destination, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(FaceGallery gallery, File file) throws IOException {
+        int dimension = gallery.getDimension();
+        int count = gallery.size();
+        File tmp = new File(file.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        try {
+            out.setLength(fileSize(dimension, count));
+            MappedByteBuffer buffer = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize(dimension, count));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(count);
+
+            float[] embedding = new float[dimension];
+            buffer.position(HEADER_SIZE);
+            FloatBuffer embeddings = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            for (int i = 0; i < count; i++) {
+                gallery.getEmbedding(i, embedding, 0);
+                embeddings.put(embedding);
+            }
+            buffer.position(HEADER_SIZE + count * dimension * 4);
+            IntBuffer ids = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            for (int i = 0; i < count; i++)
+                ids.put(gallery.getId(i));
+            buffer.force();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    private static long fileSize(int dimension, int count) {
+        return HEADER_SIZE + (long) count * dimension * 4 + (long) count * 4;
+    }
+
+    public int getDimension() {
+        return mDimension;
+    }
+
+    /**
+     * @return number of embeddings
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @param index - index of the embedding
+     * @return id the embedding was enrolled with
+     */
+    public int getId(int index) {
+        return mIds.get(index);
+    }
+
+    /**
+     * Finds the most similar embedding by scanning all of them
+     * @param query - normalized embedding of the face
+     * @param offset - position of the embedding in the array
+     * @param match - receives the best match
+     * @return false if the gallery is empty
+     */
+    public boolean findNearest(float[] query, int offset, FaceGallery.Match match) {
+        if (mCount == 0)
+            return false;
+
+        int best = 0;
+        float bestSimilarity = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < mCount; i++) {
+            float similarity = dot(i * mDimension, query, offset);
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = i;
+            }
+        }
+
+        match.id = mIds.get(best);
+        match.index = best;
+        match.similarity = bestSimilarity;
+        return true;
+    }
+
+    /**
+     * Copies an embedding out of the gallery
+     * @param index - index of the embedding
+     * @param dst - destination
+     * @param offset - position in the destination
+     */
+    public void getEmbedding(int index, float[] dst, int offset) {
+        for (int i = 0; i < mDimension; i++)
+            dst[offset + i] = mEmbeddings.get(index * mDimension + i);
+    }
+
+    /**
+     * Copies all of the embeddings into a gallery, e.g. to edit them and write them back
+     * @param gallery - destination of the same dimension
+     */
+    public void copyTo(FaceGallery gallery) {
+        float[] embedding = new float[mDimension];
+        for (int i = 0; i < mCount; i++) {
+            getEmbedding(i, embedding, 0);
+            gallery.add(mIds.get(i), embedding, 0);
+        }
+    }
+
+    /**
+     * Same as FaceGallery.dot(), reading the embedding with absolute gets so the scan does not
+     * copy it out of the mapping
+     */
+    private float dot(int position, float[] b, int bOffset) {
+        FloatBuffer a = mEmbeddings;
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < mDimension; i += 4) {
+            s0 += a.get(position + i) * b[bOffset + i];
+            s1 += a.get(position + i + 1) * b[bOffset + i + 1];
+            s2 += a.get(position + i + 2) * b[bOffset + i + 2];
+            s3 += a.get(position + i + 3) * b[bOffset + i + 3];
+        }
+        for (; i < mDimension; i++)
+            s0 += a.get(position + i) * b[bOffset + i];
+        return (s0 + s1) + (s2 + s3);
+    }
+}
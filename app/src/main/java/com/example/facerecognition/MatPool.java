@@ -0,0 +1,155 @@
+package com.example.facerecognition;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Pool of Mats keyed by their size and type, so the native buffers of frames are reused
+ * instead of being reallocated whenever the camera is reconnected, and never left to the
+ * finalizer. A Mat is leased with acquire() and has to be handed back with release(),
+ * after which it must not be used by the caller any more.
+ * In debug builds the stack trace of every lease is kept, so checkLeaks() can tell where
+ * the Mats that were never returned came from.
+ * All of the methods are thread safe, acquire() and release() do not allocate once the
+ * pool has the buffers of the needed sizes.
+ */
+public class MatPool {
+
+    private static final String TAG = "MatPool";
+    private static final int DEFAULT_MAX_FREE = 4;
+
+    private final ArrayList<Bucket> mBuckets = new ArrayList<Bucket>();
+    private final int mMaxFree;
+    private final Map<Mat, Throwable> mLeases; // Only tracked in debug builds
+    private int mLeaseCount;
+
+    public MatPool() {
+        this(DEFAULT_MAX_FREE, BuildConfig.DEBUG);
+    }
+
+    /**
+     * @param maxFree - how many unused Mats of the same size and type are kept
+     * @param trackLeases - remember where each lease was acquired, for checkLeaks()
+     */
+    public MatPool(int maxFree, boolean trackLeases) {
+        mMaxFree = maxFree;
+        mLeases = trackLeases ? new IdentityHashMap<Mat, Throwable>() : null;
+    }
+
+    /**
+     * Leases a Mat, its content is undefined
+     * @param rows - number of rows
+     * @param cols - number of columns
+     * @param type - type of the Mat, one of the CvType values
+     * @return the Mat, which has to be given back with release()
+     */
+    public synchronized Mat acquire(int rows, int cols, int type) {
+        Bucket bucket = findBucket(rows, cols, type);
+        Mat mat;
+        if (bucket != null && bucket.mCount > 0) {
+            mat = bucket.mFree[--bucket.mCount];
+            bucket.mFree[bucket.mCount] = null;
+        } else {
+            mat = new Mat(rows, cols, type);
+        }
+
+        mLeaseCount++;
+        if (mLeases != null)
+            mLeases.put(mat, new Throwable("Leased " + cols + "x" + rows + " type " + type));
+        return mat;
+    }
+
+    /**
+     * Returns a leased Mat to the pool. It is kept for the size and type it has now,
+     * in case it was reallocated while leased.
+     * @param mat - Mat obtained from acquire()
+     */
+    public synchronized void release(Mat mat) {
+        if (mLeases != null && mLeases.remove(mat) == null)
+            throw new IllegalArgumentException("Mat was not leased from this pool or was already released");
+        mLeaseCount--;
+
+        if (mat.empty() || !mat.isContinuous()) {
+            mat.release(); // Not worth keeping, e.g. a submat
+            return;
+        }
+
+        Bucket bucket = findBucket(mat.rows(), mat.cols(), mat.type());
+        if (bucket == null) {
+            bucket = new Bucket(mat.rows(), mat.cols(), mat.type(), mMaxFree);
+            mBuckets.add(bucket);
+        }
+        if (bucket.mCount < bucket.mFree.length) {
+            bucket.mFree[bucket.mCount++] = mat;
+        } else {
+            mat.release();
+        }
+    }
+
+    /**
+     * @return number of Mats leased and not released yet
+     */
+    public synchronized int getLeaseCount() {
+        return mLeaseCount;
+    }
+
+    /**
+     * Logs the Mats that are still leased, with where they were acquired in debug builds.
+     * Meant to be called when all of the leases should have been returned.
+     * @return true if there are leaked Mats
+     */
+    public synchronized boolean checkLeaks() {
+        if (mLeaseCount == 0)
+            return false;
+        Log.w(TAG, mLeaseCount + " Mat(s) still leased");
+        if (mLeases != null) {
+            for (Throwable trace : mLeases.values())
+                Log.w(TAG, "Leaked Mat", trace);
+        }
+        return true;
+    }
+
+    /**
+     * Releases the native memory of all of the unused Mats. Leased Mats stay valid.
+     */
+    public synchronized void clear() {
+        for (Bucket bucket : mBuckets) {
+            for (int i = 0; i < bucket.mCount; i++) {
+                bucket.mFree[i].release();
+                bucket.mFree[i] = null;
+            }
+            bucket.mCount = 0;
+        }
+        mBuckets.clear();
+    }
+
+    // Only a few different sizes are used at a time, so a linear search is cheaper than hashing
+    private Bucket findBucket(int rows, int cols, int type) {
+        for (int i = 0; i < mBuckets.size(); i++) {
+            Bucket bucket = mBuckets.get(i);
+            if (bucket.mRows == rows && bucket.mCols == cols && bucket.mType == type)
+                return bucket;
+        }
+        return null;
+    }
+
+    private static class Bucket {
+        final int mRows;
+        final int mCols;
+        final int mType;
+        final Mat[] mFree;
+        int mCount;
+
+        Bucket(int rows, int cols, int type, int maxFree) {
+            mRows = rows;
+            mCols = cols;
+            mType = type;
+            mFree = new Mat[maxFree];
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.facerecognition;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the recognition result of every face track, so a face is embedded when it first
+ * appears and then only re-verified from time to time instead of on every frame.
+ * A result is re-verified after the verify interval, which is longer for confident matches
+ * than for weak or unknown ones. An entry is dropped once its track has not been seen for
+ * the TTL. When the cache is full the least recently seen track is evicted, so the memory
+ * stays the same however many faces pass by.
+ * The entries are kept in primitive arrays and looked up by a linear scan, which is cheaper
+ * than hashing for the few dozen tracks of a crowded scene and never allocates.
+ * Instances are not thread safe.
+ */
+public class RecognitionCache {
+
+    public static final int DEFAULT_CAPACITY = 32;
+    public static final long DEFAULT_TTL_MILLIS = 2000;
+    public static final long DEFAULT_CONFIDENT_INTERVAL_MILLIS = 3000;
+    public static final long DEFAULT_UNCERTAIN_INTERVAL_MILLIS = 500;
+    public static final float DEFAULT_CONFIDENT_SIMILARITY = 0.7f;
+
+    private final int mDimension;
+    private final int[] mTrackIds;
+    private final int[] mIdentities;
+    private final float[] mSimilarities;
+    private final float[] mEmbeddings;
+    private final long[] mVerifiedNanos;
+    private final long[] mSeenNanos;
+    private int mCount;
+
+    private long mTtlNanos = DEFAULT_TTL_MILLIS * 1000000L;
+    private long mConfidentIntervalNanos = DEFAULT_CONFIDENT_INTERVAL_MILLIS * 1000000L;
+    private long mUncertainIntervalNanos = DEFAULT_UNCERTAIN_INTERVAL_MILLIS * 1000000L;
+    private float mConfidentSimilarity = DEFAULT_CONFIDENT_SIMILARITY;
+
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    /**
+     * @param dimension - length of the embeddings
+     */
+    public RecognitionCache(int dimension) {
+        this(dimension, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param dimension - length of the embeddings
+     * @param capacity - largest number of tracks remembered at once
+     */
+    public RecognitionCache(int dimension, int capacity) {
+        capacity = Math.max(capacity, 1);
+        mDimension = dimension;
+        mTrackIds = new int[capacity];
+        mIdentities = new int[capacity];
+        mSimilarities = new float[capacity];
+        mEmbeddings = new float[capacity * dimension];
+        mVerifiedNanos = new long[capacity];
+        mSeenNanos = new long[capacity];
+    }
+
+    /**
+     * @param ttlMillis - time after which the entry of a track that was not seen is dropped
+     */
+    public void setTtl(long ttlMillis) {
+        mTtlNanos = ttlMillis * 1000000L;
+    }
+
+    /**
+     * Sets how often the cached results are recomputed
+     * @param confidentMillis - interval for results with at least the confident similarity
+     * @param uncertainMillis - interval for the other results, including unknown faces
+     * @param confidentSimilarity - similarity from which a result is considered confident
+     */
+    public void setVerifyIntervals(long confidentMillis, long uncertainMillis, float confidentSimilarity) {
+        mConfidentIntervalNanos = confidentMillis * 1000000L;
+        mUncertainIntervalNanos = uncertainMillis * 1000000L;
+        mConfidentSimilarity = confidentSimilarity;
+    }
+
+    public int getDimension() {
+        return mDimension;
+    }
+
+    /**
+     * @return number of remembered tracks
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Looks a track up and marks it as seen
+     * @param trackId - id of the track
+     * @param nowNanos - current System.nanoTime()
+     * @return index of the entry for the getters, or -1 if the track has to be recognized,
+     *         because it is new or its result is due for verification
+     */
+    public int lookup(int trackId, long nowNanos) {
+        int i = indexOf(trackId);
+        if (i < 0 || nowNanos - mSeenNanos[i] > mTtlNanos) {
+            mMisses++;
+            return -1;
+        }
+        mSeenNanos[i] = nowNanos;
+
+        long interval = mSimilarities[i] >= mConfidentSimilarity && mIdentities[i] != FaceRecognizer.UNKNOWN
+                ? mConfidentIntervalNanos : mUncertainIntervalNanos;
+        if (nowNanos - mVerifiedNanos[i] > interval) {
+            mMisses++;
+            return -1;
+        }
+        mHits++;
+        return i;
+    }
+
+    /**
+     * Stores the result of a recognition, replacing the previous result of the track
+     * @param trackId - id of the track
+     * @param identity - recognized id, or FaceRecognizer.UNKNOWN
+     * @param similarity - similarity of the best match
+     * @param embedding - embedding of the face, or null to keep none
+     * @param offset - position of the embedding in the array
+     * @param nowNanos - current System.nanoTime()
+     */
+    public void put(int trackId, int identity, float similarity, float[] embedding, int offset, long nowNanos) {
+        int i = indexOf(trackId);
+        if (i < 0)
+            i = allocate(nowNanos);
+
+        mTrackIds[i] = trackId;
+        mIdentities[i] = identity;
+        mSimilarities[i] = similarity;
+        mVerifiedNanos[i] = nowNanos;
+        mSeenNanos[i] = nowNanos;
+        if (embedding != null)
+            System.arraycopy(embedding, offset, mEmbeddings, i * mDimension, mDimension);
+        else
+            Arrays.fill(mEmbeddings, i * mDimension, (i + 1) * mDimension, 0);
+    }
+
+    /**
+     * @param index - index returned by lookup()
+     * @return the cached identity
+     */
+    public int getIdentity(int index) {
+        return mIdentities[index];
+    }
+
+    /**
+     * @param index - index returned by lookup()
+     * @return similarity of the cached identity
+     */
+    public float getSimilarity(int index) {
+        return mSimilarities[index];
+    }
+
+    /**
+     * Copies the cached embedding out, zeros if none was stored
+     * @param index - index returned by lookup()
+     * @param dst - destination
+     * @param offset - position in the destination
+     */
+    public void getEmbedding(int index, float[] dst, int offset) {
+        System.arraycopy(mEmbeddings, index * mDimension, dst, offset, mDimension);
+    }
+
+    /**
+     * Drops the result of a track, e.g. after its person was enrolled again
+     * @param trackId - id of the track
+     */
+    public void invalidate(int trackId) {
+        int i = indexOf(trackId);
+        if (i >= 0)
+            removeAt(i);
+    }
+
+    /**
+     * Drops all of the results, e.g. after the gallery changed
+     */
+    public void clear() {
+        mCount = 0;
+    }
+
+    /**
+     * @return number of lookups answered from the cache
+     */
+    public long getHits() {
+        return mHits;
+    }
+
+    /**
+     * @return number of lookups which needed a recognition
+     */
+    public long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @return number of tracks evicted because the cache was full
+     */
+    public long getEvictions() {
+        return mEvictions;
+    }
+
+    private int indexOf(int trackId) {
+        for (int i = 0; i < mCount; i++) {
+            if (mTrackIds[i] == trackId)
+                return i;
+        }
+        return -1;
+    }
+
+    private int allocate(long nowNanos) {
+        // Drop the expired tracks first, they will not be seen again
+        for (int i = mCount - 1; i >= 0; i--) {
+            if (nowNanos - mSeenNanos[i] > mTtlNanos)
+                removeAt(i);
+        }
+        if (mCount < mTrackIds.length)
+            return mCount++;
+
+        int oldest = 0;
+        for (int i = 1; i < mCount; i++) {
+            if (mSeenNanos[i] - mSeenNanos[oldest] < 0)
+                oldest = i;
+        }
+        mEvictions++;
+        return oldest;
+    }
+
+    // Moves the last entry into the freed slot
+    private void removeAt(int i) {
+        int last = --mCount;
+        if (i == last)
+            return;
+        mTrackIds[i] = mTrackIds[last];
+        mIdentities[i] = mIdentities[last];
+        mSimilarities[i] = mSimilarities[last];
+        mVerifiedNanos[i] = mVerifiedNanos[last];
+        mSeenNanos[i] = mSeenNanos[last];
+        System.arraycopy(mEmbeddings, last * mDimension, mEmbeddings, i * mDimension, mDimension);
+    }
+}
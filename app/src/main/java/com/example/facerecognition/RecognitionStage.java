@@ -0,0 +1,125 @@
+package com.example.facerecognition;
+
+import android.util.Log;
+
+import com.example.facerecognition.CameraBridgeViewBase.CvCameraViewFrame;
+
+import org.opencv.core.Mat;
+
+/**
+ * FramePipeline stage which recognizes the latest faces of a DetectionStage with
+ * FaceRecognizer.recognizeAll() and keeps the identities for getResults(). With a
+ * RecognitionCache on the recognizer only faces of new tracks are embedded, so the stage
+ * stays fast enough for every frame. It also enrolls faces on request, so the recognizer
+ * is only used on the thread of the stage. It passes its input on unchanged.
+ */
+public class RecognitionStage implements FrameProcessor {
+
+    private static final String TAG = "RecognitionStage";
+
+    private final DetectionStage mDetection;
+    private volatile FaceRecognizer mRecognizer;
+    private volatile boolean mColor;
+    private final FaceRects mFaces = new FaceRects();
+    private int[] mIdentities = new int[FaceRects.DEFAULT_CAPACITY];
+    private volatile boolean mEnrollRequested;
+
+    // Results of the latest frame, guarded by themselves
+    private final FaceRects mResultFaces = new FaceRects();
+    private int[] mResultIdentities = new int[FaceRects.DEFAULT_CAPACITY];
+
+    /**
+     * @param detection - stage the faces are taken from
+     */
+    public RecognitionStage(DetectionStage detection) {
+        mDetection = detection;
+    }
+
+    /**
+     * Sets the recognizer, the faces are not recognized until it is set
+     * @param recognizer - recognizer only used by this stage from now on
+     * @param color - whether the embedder gets the color frame instead of the gray one
+     */
+    public void setRecognizer(FaceRecognizer recognizer, boolean color) {
+        mColor = color;
+        mRecognizer = recognizer;
+    }
+
+    /**
+     * Enrolls the largest face of the next frame as a new person
+     */
+    public void enrollLargestFace() {
+        mEnrollRequested = true;
+    }
+
+    /**
+     * Copies the faces of the latest processed frame with their identities
+     * @param faces - receives the faces, owned by the caller
+     * @param identities - receives the identity of every face or FaceRecognizer.UNKNOWN,
+     *                   grown when it is too small
+     * @return the identities array, which is a new one if it was grown
+     */
+    public int[] getResults(FaceRects faces, int[] identities) {
+        synchronized (mResultFaces) {
+            faces.set(mResultFaces);
+            if (identities.length < faces.size())
+                identities = new int[faces.size()];
+            System.arraycopy(mResultIdentities, 0, identities, 0, faces.size());
+        }
+        return identities;
+    }
+
+    @Override
+    public void onStarted(int width, int height) {
+    }
+
+    @Override
+    public Mat process(CvCameraViewFrame frame, Mat input) {
+        FaceRecognizer recognizer = mRecognizer;
+        if (recognizer != null)
+            mDetection.getFaces(mFaces);
+        else
+            mFaces.clear();
+        int count = mFaces.size();
+        if (mIdentities.length < count)
+            mIdentities = new int[count];
+
+        if (count > 0) {
+            Mat image = mColor ? frame.rgba() : frame.gray();
+            if (mEnrollRequested) {
+                mEnrollRequested = false;
+                enroll(recognizer, image);
+            }
+            recognizer.recognizeAll(image, mFaces, mIdentities, null);
+        }
+
+        synchronized (mResultFaces) {
+            mResultFaces.set(mFaces);
+            if (mResultIdentities.length < count)
+                mResultIdentities = new int[count];
+            System.arraycopy(mIdentities, 0, mResultIdentities, 0, count);
+        }
+        return input;
+    }
+
+    private void enroll(FaceRecognizer recognizer, Mat image) {
+        int largest = 0;
+        for (int i = 1; i < mFaces.size(); i++) {
+            if ((long) mFaces.getWidth(i) * mFaces.getHeight(i) > (long) mFaces.getWidth(largest) * mFaces.getHeight(largest))
+                largest = i;
+        }
+        int id = recognizer.nextId();
+        if (recognizer.enroll(id, image, mFaces, largest))
+            Log.i(TAG, "Enrolled person " + id);
+        else
+            Log.w(TAG, "Enrollment failed, the face is outside of the frame");
+    }
+
+    @Override
+    public void onStopped() {
+        mFaces.clear();
+        synchronized (mResultFaces) {
+            mResultFaces.clear();
+        }
+    }
+}
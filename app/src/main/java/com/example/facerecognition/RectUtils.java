@@ -0,0 +1,38 @@
+package com.example.facerecognition;
+
+import org.opencv.core.Rect;
+
+/**
+ * Helper methods for mapping face rectangles between the different
+ * coordinate spaces used by the frame pipeline.
+ * The class only depends on the pure Java OpenCV types, so it can be used
+ * outside of Android as well.
+ */
+public final class RectUtils {
+
+    private RectUtils() {
+    }
+
+    /**
+     * Scales rect in place, used to map a rectangle found on a downscaled
+     * frame back to the coordinates of the original frame
+     * @param rect - rectangle to be scaled
+     * @param factor - ratio between the target and the source coordinate space
+     */
+    public static void scale(Rect rect, double factor) {
+        rect.x = (int) Math.round(rect.x * factor);
+        rect.y = (int) Math.round(rect.y * factor);
+        rect.width = (int) Math.round(rect.width * factor);
+        rect.height = (int) Math.round(rect.height * factor);
+    }
+
+    /**
+     * Scales all of the rects in place
+     * @param rects - rectangles to be scaled
+     * @param factor - ratio between the target and the source coordinate space
+     */
+    public static void scale(Rect[] rects, double factor) {
+        for (Rect rect : rects)
+            scale(rect, factor);
+    }
+}
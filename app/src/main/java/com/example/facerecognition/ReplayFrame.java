@@ -0,0 +1,72 @@
+package com.example.facerecognition;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * CvCameraViewFrame backed by a recorded NV21 frame instead of the camera, it behaves
+ * the same way as the frames of JavaCameraView. The frame is reused, every frame
+ * is loaded into the same Mat with put().
+ */
+public class ReplayFrame implements CameraBridgeViewBase.CvCameraViewFrame {
+
+    private final int mWidth;
+    private final int mHeight;
+    private final Mat mYuvFrameData;
+    private final Mat mGray;
+    private final Mat mRgba = new Mat();
+
+    /**
+     * @param width - width of the recorded frames
+     * @param height - height of the recorded frames
+     */
+    public ReplayFrame(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mYuvFrameData = new Mat(height + (height / 2), width, CvType.CV_8UC1);
+        mGray = mYuvFrameData.submat(0, height, 0, width);
+    }
+
+    /**
+     * @param width - width of the frame
+     * @param height - height of the frame
+     * @return size of a NV21 frame in bytes
+     */
+    public static int getFrameSize(int width, int height) {
+        return width * (height + (height / 2));
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Replaces the content of the frame
+     * @param nv21 - NV21 data of at least getFrameSize() bytes
+     */
+    public void load(byte[] nv21) {
+        mYuvFrameData.put(0, 0, nv21);
+    }
+
+    @Override
+    public Mat gray() {
+        return mGray;
+    }
+
+    @Override
+    public Mat rgba() {
+        Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+        return mRgba;
+    }
+
+    public void release() {
+        mGray.release();
+        mYuvFrameData.release();
+        mRgba.release();
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.facerecognition;
+
+import android.util.Log;
+
+import com.example.facerecognition.CameraBridgeViewBase.CvCameraViewListener2;
+
+import java.io.IOException;
+
+/**
+ * FrameSource delivering recorded frames with a FrameReplayer on its own thread,
+ * so a pipeline can be run without a camera.
+ */
+public class ReplayFrameSource implements FrameSource {
+
+    private static final String TAG = "ReplayFrameSource";
+
+    private final FrameReplayer mReplayer;
+    private CvCameraViewListener2 mListener;
+    private Thread mThread;
+    private volatile FrameReplayer.Result mResult;
+
+    /**
+     * @param replayer - replayer of the recordings, configured with the frame rate and loops
+     */
+    public ReplayFrameSource(FrameReplayer replayer) {
+        mReplayer = replayer;
+    }
+
+    @Override
+    public void setCvCameraViewListener(CvCameraViewListener2 listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void start() {
+        if (mThread != null)
+            return;
+        mResult = null;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mResult = mReplayer.run(mListener);
+                } catch (IOException e) {
+                    Log.e(TAG, "Replay failed", e);
+                }
+            }
+        }, TAG);
+        mThread.start();
+    }
+
+    /**
+     * Stops the replay and waits for the listener to be stopped
+     */
+    @Override
+    public void stop() {
+        if (mThread == null)
+            return;
+        mThread.interrupt();
+        join();
+    }
+
+    /**
+     * Waits until all of the frames are replayed
+     * @return the statistics of the replay, or null if it failed
+     */
+    public FrameReplayer.Result join() {
+        try {
+            if (mThread != null)
+                mThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            mThread = null;
+        }
+        return mResult;
+    }
+}
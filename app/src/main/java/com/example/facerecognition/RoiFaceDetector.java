@@ -0,0 +1,186 @@
+package com.example.facerecognition;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+
+/**
+ * Face detector which first searches expanded regions around the faces known from the
+ * previous frames, using a narrow range of face sizes. The regions are the faces found by
+ * the previous call, or the boxes of a tracker handed over with setRegions(). The whole
+ * frame is only scanned periodically, when there are no regions or when any of them misses,
+ * as most frames contain the same faces as the one before.
+ * The faces are kept in FaceRects, so a call does not allocate.
+ */
+public class RoiFaceDetector extends FaceDetector {
+
+    public static final int DEFAULT_FULL_SCAN_INTERVAL = 10;
+
+    private static final float ROI_MARGIN = 0.5f; // Fraction of the face size added on each side
+    private static final float MIN_SIZE_RATIO = 0.7f;
+    private static final float MAX_SIZE_RATIO = 1.4f;
+
+    private final MatOfRect mRoiFaces = new MatOfRect();
+    private final FaceRects mRoiRects = new FaceRects();
+    private final FaceRects mRegions = new FaceRects();
+    private final FaceRects mFound = new FaceRects();
+    private final Rect mRoi = new Rect();
+    private final Size mMinSize = new Size();
+    private final Size mMaxSize = new Size();
+
+    private int mFullScanInterval = DEFAULT_FULL_SCAN_INTERVAL;
+    private int mFramesSinceFullScan;
+    private int mFramesPerCall = 1;
+
+    private long mFullScans;
+    private long mRoiScans;
+
+    /**
+     * @param classifier - loaded cascade used for detection
+     */
+    public RoiFaceDetector(CascadeClassifier classifier) {
+        super(classifier);
+    }
+
+    /**
+     * @param cascades - loaded cascades which run concurrently, their results are merged
+     */
+    public RoiFaceDetector(CascadeGroup cascades) {
+        super(cascades);
+    }
+
+    /**
+     * Sets how often the whole frame is scanned, even if all of the known faces are found again
+     * @param interval - number of frames between two full scans, 1 scans the whole frame on every call
+     */
+    public void setFullScanInterval(int interval) {
+        mFullScanInterval = Math.max(1, interval);
+    }
+
+    /**
+     * Replaces the regions searched by the next call, e.g. with the boxes a tracker has moved
+     * the faces to since the last detection
+     * @param regions - faces in the coordinates of the image the cascade runs on
+     * @param frames - number of frames since the previous call, counted towards the full scan interval
+     */
+    @Override
+    public void setRegions(FaceRects regions, int frames) {
+        mRegions.set(regions);
+        mFramesPerCall = Math.max(1, frames);
+    }
+
+    /**
+     * @return number of calls which scanned the whole frame
+     */
+    public long getFullScans() {
+        return mFullScans;
+    }
+
+    /**
+     * @return number of calls which were answered by the region searches alone
+     */
+    public long getRoiScans() {
+        return mRoiScans;
+    }
+
+    @Override
+    protected void detectFaces(Mat image, MatOfRect faces) {
+        mFramesSinceFullScan += mFramesPerCall;
+        mFramesPerCall = 1;
+        if (mRegions.size() == 0 || mFramesSinceFullScan >= mFullScanInterval || !detectInRegions(image, faces)) {
+            super.detectFaces(image, faces);
+            mRegions.fill(faces);
+            mFramesSinceFullScan = 0;
+            mFullScans++;
+        } else {
+            mRoiScans++;
+        }
+    }
+
+    /**
+     * Searches the regions around the known faces
+     * @return false if any of the known faces was not found again
+     */
+    private boolean detectInRegions(Mat image, MatOfRect faces) {
+        Size windowSize = getWindowSize();
+        mFound.clear();
+
+        for (int i = 0; i < mRegions.size(); i++) {
+            int x = mRegions.getX(i);
+            int y = mRegions.getY(i);
+            int width = mRegions.getWidth(i);
+            int height = mRegions.getHeight(i);
+            int marginX = Math.round(width * ROI_MARGIN);
+            int marginY = Math.round(height * ROI_MARGIN);
+            mRoi.x = Math.max(x - marginX, 0);
+            mRoi.y = Math.max(y - marginY, 0);
+            mRoi.width = Math.min(x + width + marginX, image.cols()) - mRoi.x;
+            mRoi.height = Math.min(y + height + marginY, image.rows()) - mRoi.y;
+            if (mRoi.width < windowSize.width || mRoi.height < windowSize.height)
+                return false;
+
+            mMinSize.width = mMinSize.height = Math.max(width * MIN_SIZE_RATIO, windowSize.width);
+            mMaxSize.width = mMaxSize.height = Math.max(width * MAX_SIZE_RATIO, mMinSize.width);
+
+            Mat roi = image.submat(mRoi);
+            detectMultiScale(roi, mRoiFaces, mMinSize, mMaxSize);
+            roi.release();
+
+            mRoiRects.fill(mRoiFaces);
+            int face = largest(mRoiRects);
+            if (face < 0)
+                return false;
+            int faceX = mRoiRects.getX(face) + mRoi.x;
+            int faceY = mRoiRects.getY(face) + mRoi.y;
+            int faceWidth = mRoiRects.getWidth(face);
+            int faceHeight = mRoiRects.getHeight(face);
+
+            // Regions of faces close to each other overlap, so the same face can be found twice
+            if (!containsCenter(mFound, faceX + faceWidth / 2, faceY + faceHeight / 2))
+                mFound.add(faceX, faceY, faceWidth, faceHeight);
+        }
+
+        mRegions.set(mFound);
+        mFound.copyTo(faces);
+        return true;
+    }
+
+    private static int largest(FaceRects rects) {
+        int largest = -1;
+        long largestArea = -1;
+        for (int i = 0; i < rects.size(); i++) {
+            long area = (long) rects.getWidth(i) * rects.getHeight(i);
+            if (area > largestArea) {
+                largestArea = area;
+                largest = i;
+            }
+        }
+        return largest;
+    }
+
+    private static boolean containsCenter(FaceRects rects, int cx, int cy) {
+        for (int i = 0; i < rects.size(); i++) {
+            int x = rects.getX(i);
+            int y = rects.getY(i);
+            if (cx >= x && cx < x + rects.getWidth(i) && cy >= y && cy < y + rects.getHeight(i))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the known faces, so the next call scans the whole frame
+     */
+    public void reset() {
+        mRegions.clear();
+        mFramesPerCall = 1;
+    }
+
+    @Override
+    public void release() {
+        super.release();
+        reset();
+    }
+}
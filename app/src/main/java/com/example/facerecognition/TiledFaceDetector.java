@@ -0,0 +1,200 @@
+package com.example.facerecognition;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Face detector which splits the image into overlapping strips and runs the cascade on all
+ * of them at once, for OpenCV builds whose detectMultiScale() does not use all of the cores.
+ * The strips overlap by the maximal face size, so every face fits completely into at least one
+ * of them, and the faces found twice in the overlaps are removed with non-maximum suppression.
+ * When the maximal face size is close to the size of the image, the strips would be mostly
+ * overlap, so the image is then searched as a whole.
+ * A classifier must not be used by several threads at once, so every strip owns one of the
+ * classifiers passed to the constructor. There are never more strips than classifiers, and a
+ * strip runs in only one task at a time, whichever pool thread picks it up.
+ * The app detects on a frame downscaled to a few hundred pixels, where the strips would be
+ * mostly overlap, and runs the frontal and profile cascades concurrently instead, so it does
+ * not use this detector. It pays off with setDetectionWidth(0) on large frames.
+ */
+public class TiledFaceDetector extends FaceDetector {
+
+    private static final String TAG = "TiledFaceDetector";
+
+    private static final double SCALE_FACTOR = 1.1;
+    private static final int MIN_NEIGHBORS = 3;
+    private static final double MAX_OVERLAP = 0.3;
+    private static final float MIN_STRIP_RATIO = 1.5f; // Smallest strip length relative to the overlap
+
+    private final ExecutorService mExecutor;
+    private final CascadeClassifier[] mClassifiers;
+    private final int mThreadCount;
+    private final List<Strip> mStrips = new ArrayList<Strip>();
+    private final List<Future<?>> mFutures = new ArrayList<Future<?>>();
+    private final FaceRects mMerged = new FaceRects();
+
+    /**
+     * @param classifiers - one loaded instance of the same cascade for every thread
+     */
+    public TiledFaceDetector(CascadeClassifier[] classifiers) {
+        super(classifiers[0]);
+        mClassifiers = classifiers;
+        mThreadCount = classifiers.length;
+        mExecutor = Executors.newFixedThreadPool(mThreadCount, new DetectionThreadFactory());
+    }
+
+    /**
+     * @return number of strips the last image was split into
+     */
+    public int getStripCount() {
+        return mStrips.size();
+    }
+
+    @Override
+    protected void detectMultiScale(Mat image, MatOfRect faces, Size minSize, Size maxSize) {
+        int overlap = (int) Math.ceil(maxSize.width);
+        boolean horizontal = image.cols() >= image.rows();
+        int length = horizontal ? image.cols() : image.rows();
+
+        // As many strips as threads, unless they would be too short for the overlap
+        int count = mThreadCount;
+        while (count > 1 && stripLength(length, overlap, count) < overlap * MIN_STRIP_RATIO)
+            count--;
+        int stripLength = stripLength(length, overlap, count);
+
+        while (mStrips.size() < count)
+            mStrips.add(new Strip(mClassifiers[mStrips.size()]));
+        while (mStrips.size() > count)
+            mStrips.remove(mStrips.size() - 1).release();
+
+        for (int i = 0; i < count; i++) {
+            int start = Math.min(i * (stripLength - overlap), length - stripLength);
+            Strip strip = mStrips.get(i);
+            if (horizontal)
+                strip.prepare(image.submat(0, image.rows(), start, start + stripLength), start, 0, minSize, maxSize);
+            else
+                strip.prepare(image.submat(start, start + stripLength, 0, image.cols()), 0, start, minSize, maxSize);
+            mFutures.add(mExecutor.submit(strip));
+        }
+
+        mMerged.clear();
+        for (int i = 0; i < count; i++) {
+            if (await(mFutures.get(i)))
+                mStrips.get(i).appendTo(mMerged);
+            mStrips.get(i).finish();
+        }
+        mFutures.clear();
+
+        if (count > 1)
+            mMerged.suppressOverlaps(MAX_OVERLAP);
+        mMerged.copyTo(faces);
+    }
+
+    // Length of each of the count strips which together cover length with the given overlap
+    private static int stripLength(int length, int overlap, int count) {
+        return Math.min(length, (length + (count - 1) * overlap + count - 1) / count);
+    }
+
+    private static boolean await(Future<?> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return true;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Strip detection failed", e.getCause());
+                    return false;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void release() {
+        super.release();
+        for (Strip strip : mStrips)
+            strip.release();
+        mStrips.clear();
+    }
+
+    /**
+     * Stops the threads, the detector can not be used afterwards
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    private static class Strip implements Callable<Void> {
+        private final CascadeClassifier mClassifier;
+        private final MatOfRect mFaces = new MatOfRect();
+        private final FaceRects mRects = new FaceRects();
+        private Mat mImage;
+        private int mOffsetX;
+        private int mOffsetY;
+        private Size mMinSize;
+        private Size mMaxSize;
+
+        Strip(CascadeClassifier classifier) {
+            mClassifier = classifier;
+        }
+
+        void prepare(Mat image, int offsetX, int offsetY, Size minSize, Size maxSize) {
+            mImage = image;
+            mOffsetX = offsetX;
+            mOffsetY = offsetY;
+            mMinSize = minSize;
+            mMaxSize = maxSize;
+        }
+
+        @Override
+        public Void call() {
+            mClassifier.detectMultiScale(mImage, mFaces, SCALE_FACTOR, MIN_NEIGHBORS, 0, mMinSize, mMaxSize);
+            mRects.fill(mFaces);
+            return null;
+        }
+
+        void appendTo(FaceRects faces) {
+            for (int i = 0; i < mRects.size(); i++)
+                faces.add(mRects.getX(i) + mOffsetX, mRects.getY(i) + mOffsetY, mRects.getWidth(i), mRects.getHeight(i));
+        }
+
+        void finish() {
+            mImage.release(); // The submat header of this call
+            mImage = null;
+        }
+
+        void release() {
+            mFaces.release();
+        }
+    }
+
+    private static class DetectionThreadFactory implements ThreadFactory {
+        private int mCount;
+
+        @Override
+        public synchronized Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, TAG + "-" + mCount++);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
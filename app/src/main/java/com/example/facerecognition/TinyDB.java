@@ -15,8 +15,7 @@
  */
 
 /*
- *  The "‚‗‚" character is not a comma, it is the SINGLE LOW-9 QUOTATION MARK unicode 201A
- *  and unicode 2017 that are used for separating the items in a list.
+ *  Lists are stored as a single String, the items are joined and split by ListCodec.
  */
 
 package com.example.facerecognition;
@@ -28,14 +27,12 @@ import android.graphics.Bitmap.CompressFormat;
 import android.graphics.BitmapFactory;
 import android.os.Environment;
 import android.preference.PreferenceManager;
-import android.text.TextUtils;
 import android.util.Log;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Map;
 
 
@@ -199,14 +196,7 @@ public class TinyDB {
      * @return ArrayList of Integers
      */
     public ArrayList<Integer> getListInt(String key) {
-        String[] myList = TextUtils.split(preferences.getString(key, ""), "‚‗‚");
-        ArrayList<String> arrayToList = new ArrayList<String>(Arrays.asList(myList));
-        ArrayList<Integer> newList = new ArrayList<Integer>();
-
-        for (String item : arrayToList)
-            newList.add(Integer.parseInt(item));
-
-        return newList;
+        return ListCodec.splitInts(preferences.getString(key, ""));
     }
 
     /**
@@ -251,14 +241,7 @@ public class TinyDB {
      * @return ArrayList of Double
      */
     public ArrayList<Double> getListDouble(String key) {
-        String[] myList = TextUtils.split(preferences.getString(key, ""), "‚‗‚");
-        ArrayList<String> arrayToList = new ArrayList<String>(Arrays.asList(myList));
-        ArrayList<Double> newList = new ArrayList<Double>();
-
-        for (String item : arrayToList)
-            newList.add(Double.parseDouble(item));
-
-        return newList;
+        return ListCodec.splitDoubles(preferences.getString(key, ""));
     }
 
     /**
@@ -267,14 +250,7 @@ public class TinyDB {
      * @return ArrayList of Longs
      */
     public ArrayList<Long> getListLong(String key) {
-        String[] myList = TextUtils.split(preferences.getString(key, ""), "‚‗‚");
-        ArrayList<String> arrayToList = new ArrayList<String>(Arrays.asList(myList));
-        ArrayList<Long> newList = new ArrayList<Long>();
-
-        for (String item : arrayToList)
-            newList.add(Long.parseLong(item));
-
-        return newList;
+        return ListCodec.splitLongs(preferences.getString(key, ""));
     }
 
     /**
@@ -292,7 +268,7 @@ public class TinyDB {
      * @return ArrayList of String
      */
     public ArrayList<String> getListString(String key) {
-        return new ArrayList<String>(Arrays.asList(TextUtils.split(preferences.getString(key, ""), "‚‗‚")));
+        return ListCodec.splitStrings(preferences.getString(key, ""));
     }
 
     /**
@@ -369,8 +345,7 @@ public class TinyDB {
      */
     public void putListInt(String key, ArrayList<Integer> intList) {
         checkForNullKey(key);
-        Integer[] myIntList = intList.toArray(new Integer[intList.size()]);
-        preferences.edit().putString(key, TextUtils.join("‚‗‚", myIntList)).apply();
+        preferences.edit().putString(key, ListCodec.join(intList)).apply();
     }
 
     /**
@@ -390,8 +365,7 @@ public class TinyDB {
      */
     public void putListLong(String key, ArrayList<Long> longList) {
         checkForNullKey(key);
-        Long[] myLongList = longList.toArray(new Long[longList.size()]);
-        preferences.edit().putString(key, TextUtils.join("‚‗‚", myLongList)).apply();
+        preferences.edit().putString(key, ListCodec.join(longList)).apply();
     }
 
     /**
@@ -421,8 +395,7 @@ public class TinyDB {
      */
     public void putListDouble(String key, ArrayList<Double> doubleList) {
         checkForNullKey(key);
-        Double[] myDoubleList = doubleList.toArray(new Double[doubleList.size()]);
-        preferences.edit().putString(key, TextUtils.join("‚‗‚", myDoubleList)).apply();
+        preferences.edit().putString(key, ListCodec.join(doubleList)).apply();
     }
 
     /**
@@ -442,8 +415,7 @@ public class TinyDB {
      */
     public void putListString(String key, ArrayList<String> stringList) {
         checkForNullKey(key);
-        String[] myStringList = stringList.toArray(new String[stringList.size()]);
-        preferences.edit().putString(key, TextUtils.join("‚‗‚", myStringList)).apply();
+        preferences.edit().putString(key, ListCodec.join(stringList)).apply();
     }
 
     /**
@@ -0,0 +1,42 @@
+package com.example.facerecognition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CharFormatTest {
+
+    private final char[] mBuf = new char[32];
+
+    private String appendLong(long value) {
+        return new String(mBuf, 0, CharFormat.append(mBuf, 0, value));
+    }
+
+    private String appendTenths(long tenths) {
+        return new String(mBuf, 0, CharFormat.appendTenths(mBuf, 0, tenths));
+    }
+
+    @Test
+    public void append_matchesLongToString() {
+        long[] values = { 0, 7, -7, 10, -10, 1234567890L, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (long value : values)
+            assertEquals(Long.toString(value), appendLong(value));
+    }
+
+    @Test
+    public void appendTenths_insertsDecimalPoint() {
+        assertEquals("0.0", appendTenths(0));
+        assertEquals("0.5", appendTenths(5));
+        assertEquals("-0.5", appendTenths(-5));
+        assertEquals("29.9", appendTenths(299));
+        assertEquals("922337203685477580.7", appendTenths(Long.MAX_VALUE));
+        assertEquals("-922337203685477580.8", appendTenths(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void append_continuesAtPosition() {
+        int len = CharFormat.append(mBuf, 0, "fps ");
+        len = CharFormat.append(mBuf, len, 30);
+        assertEquals("fps 30", new String(mBuf, 0, len));
+    }
+}
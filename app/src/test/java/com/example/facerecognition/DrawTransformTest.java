@@ -0,0 +1,55 @@
+package com.example.facerecognition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DrawTransformTest {
+
+    @Test
+    public void screenOrientation_portraitDevice() {
+        assertEquals(DrawTransform.SCREEN_ORIENTATION_PORTRAIT,
+                DrawTransform.screenOrientation(DrawTransform.ROTATION_0, 1080, 1920));
+        assertEquals(DrawTransform.SCREEN_ORIENTATION_LANDSCAPE,
+                DrawTransform.screenOrientation(DrawTransform.ROTATION_90, 1920, 1080));
+        assertEquals(DrawTransform.SCREEN_ORIENTATION_REVERSE_PORTRAIT,
+                DrawTransform.screenOrientation(DrawTransform.ROTATION_180, 1080, 1920));
+        assertEquals(DrawTransform.SCREEN_ORIENTATION_REVERSE_LANDSCAPE,
+                DrawTransform.screenOrientation(DrawTransform.ROTATION_270, 1920, 1080));
+    }
+
+    @Test
+    public void screenOrientation_landscapeDevice() {
+        assertEquals(DrawTransform.SCREEN_ORIENTATION_LANDSCAPE,
+                DrawTransform.screenOrientation(DrawTransform.ROTATION_0, 1920, 1080));
+        assertEquals(DrawTransform.SCREEN_ORIENTATION_PORTRAIT,
+                DrawTransform.screenOrientation(DrawTransform.ROTATION_90, 1080, 1920));
+    }
+
+    @Test
+    public void computeMatrix_landscapeBackCameraOnlyScales() {
+        float[] m = new float[DrawTransform.MATRIX_SIZE];
+        float scale = DrawTransform.computeMatrix(DrawTransform.SCREEN_ORIENTATION_LANDSCAPE, false, false,
+                640, 480, 1280, 960, m);
+
+        assertEquals(2, scale, 0);
+        assertArrayEquals(new float[] { 2, 0, 0, 0, 2, 0, 0, 0, 1 }, m, 1e-6f);
+    }
+
+    @Test
+    public void computeMatrix_portraitFitsRotatedFrame() {
+        float[] m = new float[DrawTransform.MATRIX_SIZE];
+        float scale = DrawTransform.computeMatrix(DrawTransform.SCREEN_ORIENTATION_PORTRAIT, false, false,
+                640, 480, 960, 1280, m);
+
+        assertEquals(2, scale, 0);
+        // The frame is turned by 90 degrees clockwise and fills the canvas
+        assertCorner(m, 0, 0, 960, 0);
+        assertCorner(m, 640, 480, 0, 1280);
+    }
+
+    private static void assertCorner(float[] m, float x, float y, float expectedX, float expectedY) {
+        assertEquals(expectedX, m[0] * x + m[1] * y + m[2], 1e-3f);
+        assertEquals(expectedY, m[3] * x + m[4] * y + m[5], 1e-3f);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.facerecognition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FaceGalleryTest {
+
+    @Test
+    public void dot_handlesTailAndOffsets() {
+        float[] a = {9, 1, 2, 3, 4, 5, 6};
+        float[] b = {1, 1, 1, 1, 1, 2, 9};
+
+        // Six elements, so four go through the unrolled loop and two through the tail
+        assertEquals(1 + 2 + 3 + 4 + 5 + 6 * 2, FaceGallery.dot(a, 1, b, 0, 6), 1e-6);
+        assertEquals(0, FaceGallery.dot(a, 0, b, 0, 0), 0);
+    }
+
+    @Test
+    public void add_normalizesAndGrows() {
+        FaceGallery gallery = new FaceGallery(2, 1);
+        gallery.add(7, new float[] {3, 4}, 0);
+        gallery.add(8, new float[] {0, 0, 0, 2}, 2);
+
+        assertEquals(2, gallery.size());
+        float[] embedding = new float[2];
+        gallery.getEmbedding(0, embedding, 0);
+        assertEquals(0.6f, embedding[0], 1e-6);
+        assertEquals(0.8f, embedding[1], 1e-6);
+        assertEquals(8, gallery.getId(1));
+        assertEquals(1, gallery.similarity(1, new float[] {0, 1}, 0), 1e-6);
+    }
+
+    @Test
+    public void remove_movesLastIntoFreedSlots() {
+        FaceGallery gallery = new FaceGallery(2);
+        gallery.add(1, new float[] {1, 0}, 0);
+        gallery.add(2, new float[] {0, 1}, 0);
+        gallery.add(1, new float[] {1, 1}, 0);
+        gallery.add(3, new float[] {-1, 0}, 0);
+
+        assertEquals(2, gallery.remove(1));
+        assertEquals(0, gallery.remove(1));
+        assertEquals(2, gallery.size());
+        assertEquals(3, gallery.getId(0));
+        assertEquals(2, gallery.getId(1));
+
+        float[] embedding = new float[2];
+        gallery.getEmbedding(0, embedding, 0);
+        assertEquals(-1, embedding[0], 1e-6);
+        assertEquals(0, embedding[1], 1e-6);
+    }
+
+    @Test
+    public void findNearest_returnsMostSimilar() {
+        FaceGallery gallery = new FaceGallery(2);
+        FaceGallery.Match match = new FaceGallery.Match();
+        assertFalse(gallery.findNearest(new float[] {1, 0}, 0, match));
+
+        gallery.add(1, new float[] {1, 0}, 0);
+        gallery.add(2, new float[] {0, 1}, 0);
+        gallery.add(3, new float[] {-1, 0}, 0);
+
+        float[] query = {0, 0.6f, 0.8f};
+        assertTrue(gallery.findNearest(query, 1, match));
+        assertEquals(2, match.id);
+        assertEquals(1, match.index);
+        assertEquals(0.8f, match.similarity, 1e-6);
+    }
+}
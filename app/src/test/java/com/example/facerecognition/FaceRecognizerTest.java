@@ -0,0 +1,132 @@
+package com.example.facerecognition;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FaceRecognizerTest {
+
+    private static final int DIMENSION = 4;
+
+    private File mFile;
+    private MappedFaceGallery mStored;
+
+    // Only the matching is tested, which needs no crops
+    private static class UnusedEmbedder implements FaceEmbedder {
+        @Override
+        public int getDimension() {
+            return DIMENSION;
+        }
+
+        @Override
+        public void embed(Mat face, float[] embedding, int offset) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void embed(List<Mat> faces, int count, float[] embeddings, int offset) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        FaceGallery gallery = new FaceGallery(DIMENSION);
+        gallery.add(0, new float[] {1, 0, 0, 0}, 0);
+        gallery.add(1, new float[] {0, 1, 0, 0}, 0);
+        gallery.add(1, new float[] {0, 1, 1, 0}, 0);
+        mFile = File.createTempFile("gallery", ".fgal");
+        MappedFaceGallery.write(gallery, mFile);
+        mStored = MappedFaceGallery.open(mFile);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private FaceRecognizer createRecognizer() {
+        FaceRecognizer recognizer = new FaceRecognizer(new UnusedEmbedder(), new FaceGallery(DIMENSION));
+        recognizer.getGallery().add(2, new float[] {0, 0, 0, 1}, 0);
+        recognizer.setStoredGallery(mStored);
+        return recognizer;
+    }
+
+    @Test
+    public void match_searchesBothGalleries() {
+        FaceRecognizer recognizer = createRecognizer();
+
+        assertEquals(0, recognizer.match(new float[] {1, 0, 0, 0}, 0));
+        assertEquals(2, recognizer.match(new float[] {0, 0, 0, 1}, 0));
+        assertEquals(1.0f, recognizer.getLastSimilarity(), 1e-6);
+        assertEquals(FaceRecognizer.UNKNOWN, recognizer.match(new float[] {-1, 0, 0, 0}, 0));
+        assertEquals(3, recognizer.nextId());
+    }
+
+    @Test
+    public void setIndex_indexesBothGalleries() {
+        FaceRecognizer recognizer = createRecognizer();
+        HnswIndex index = new HnswIndex(DIMENSION);
+        recognizer.setIndex(index);
+
+        assertEquals(4, index.size());
+        assertEquals(0, recognizer.match(new float[] {1, 0, 0, 0}, 0));
+        assertEquals(1, recognizer.match(new float[] {0, 1, 0, 0}, 0));
+        assertEquals(2, recognizer.match(new float[] {0, 0, 0, 1}, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setIndex_rejectsFilledIndex() {
+        HnswIndex index = new HnswIndex(DIMENSION);
+        index.add(5, new float[] {1, 0, 0, 0}, 0);
+        createRecognizer().setIndex(index);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void setStoredGallery_mustPrecedeIndex() {
+        FaceRecognizer recognizer = new FaceRecognizer(new UnusedEmbedder(), new FaceGallery(DIMENSION));
+        recognizer.setIndex(new HnswIndex(DIMENSION));
+        recognizer.setStoredGallery(mStored);
+    }
+
+    @Test
+    public void remove_dropsStoredPersonEverywhere() {
+        FaceRecognizer recognizer = createRecognizer();
+        HnswIndex index = new HnswIndex(DIMENSION);
+        recognizer.setIndex(index);
+
+        assertEquals(2, recognizer.remove(1));
+        assertEquals(2, index.size());
+        assertEquals(2, recognizer.getGallery().size()); // The stored faces were copied over
+        assertEquals(0, recognizer.match(new float[] {1, 0, 0, 0}, 0));
+        assertEquals(FaceRecognizer.UNKNOWN, recognizer.match(new float[] {0, 1, 0, 0}, 0));
+
+        assertEquals(0, recognizer.remove(1));
+    }
+
+    @Test
+    public void save_writesOnlyAfterChanges() throws IOException {
+        FaceRecognizer recognizer = createRecognizer();
+        assertFalse(recognizer.save(mFile));
+
+        recognizer.remove(0);
+        assertTrue(recognizer.save(mFile));
+        assertFalse(recognizer.save(mFile));
+
+        MappedFaceGallery saved = MappedFaceGallery.open(mFile);
+        assertEquals(3, saved.size());
+        for (int i = 0; i < saved.size(); i++)
+            assertTrue(saved.getId(i) != 0);
+    }
+}
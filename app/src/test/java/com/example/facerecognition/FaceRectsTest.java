@@ -0,0 +1,104 @@
+package com.example.facerecognition;
+
+import org.junit.Test;
+import org.opencv.core.Rect;
+
+import static org.junit.Assert.*;
+
+public class FaceRectsTest {
+
+    @Test
+    public void add_growsPastCapacity() {
+        FaceRects rects = new FaceRects(1);
+        for (int i = 0; i < 5; i++)
+            rects.add(i, i + 1, i + 2, i + 3);
+
+        assertEquals(5, rects.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, rects.getX(i));
+            assertEquals(i + 1, rects.getY(i));
+            assertEquals(i + 2, rects.getWidth(i));
+            assertEquals(i + 3, rects.getHeight(i));
+            assertEquals(FaceRects.NO_ID, rects.getId(i));
+        }
+    }
+
+    @Test
+    public void set_copiesRectsAndIds() {
+        FaceRects source = new FaceRects();
+        source.add(1, 2, 3, 4);
+        source.add(5, 6, 7, 8);
+        source.setId(1, 42);
+
+        FaceRects copy = new FaceRects(1);
+        copy.set(source);
+        source.clear();
+
+        assertEquals(2, copy.size());
+        assertEquals(5, copy.getX(1));
+        assertEquals(8, copy.getHeight(1));
+        assertEquals(FaceRects.NO_ID, copy.getId(0));
+        assertEquals(42, copy.getId(1));
+    }
+
+    @Test
+    public void scale_roundsLikeRectUtils() {
+        FaceRects rects = new FaceRects();
+        rects.add(3, 5, 7, 9);
+        rects.scale(1.5);
+
+        assertEquals(5, rects.getX(0));
+        assertEquals(8, rects.getY(0));
+        assertEquals(11, rects.getWidth(0));
+        assertEquals(14, rects.getHeight(0));
+    }
+
+    @Test
+    public void overlap_isIntersectionOverUnion() {
+        FaceRects a = new FaceRects();
+        a.add(0, 0, 10, 10);
+        FaceRects b = new FaceRects();
+        b.add(5, 0, 10, 10);
+        b.add(20, 20, 10, 10);
+
+        assertEquals(50.0 / 150.0, FaceRects.overlap(a, 0, b, 0), 1e-9);
+        assertEquals(0.0, FaceRects.overlap(a, 0, b, 1), 0);
+        assertEquals(1.0, FaceRects.overlap(a, 0, a, 0), 1e-9);
+    }
+
+    @Test
+    public void clip_keepsThePartInsideOfTheImage() {
+        FaceRects rects = new FaceRects();
+        rects.add(-5, 90, 20, 20);
+        rects.add(10, 10, 20, 20);
+        rects.add(100, 0, 20, 20);
+        rects.add(-20, -20, 20, 20);
+
+        Rect clipped = new Rect();
+        assertTrue(rects.clip(0, 100, 100, clipped));
+        assertEquals(new Rect(0, 90, 15, 10), clipped);
+        assertTrue(rects.clip(1, 100, 100, clipped));
+        assertEquals(new Rect(10, 10, 20, 20), clipped);
+        assertFalse(rects.clip(2, 100, 100, clipped)); // Right of the image
+        assertFalse(rects.clip(3, 100, 100, clipped)); // Only touches the corner
+    }
+
+    @Test
+    public void suppressOverlaps_keepsLargestOfOverlappingRects() {
+        FaceRects rects = new FaceRects();
+        rects.add(2, 0, 10, 10);    // Overlaps the larger rect below by 0.83
+        rects.add(100, 100, 5, 5);  // Alone
+        rects.add(0, 0, 12, 10);
+        rects.add(10, 0, 10, 10);   // Overlaps the largest rect by 0.11
+        rects.setId(2, 7);
+
+        rects.suppressOverlaps(0.3);
+
+        assertEquals(3, rects.size());
+        assertEquals(0, rects.getX(0));
+        assertEquals(12, rects.getWidth(0));
+        assertEquals(7, rects.getId(0));
+        assertEquals(10, rects.getX(1));
+        assertEquals(100, rects.getX(2));
+    }
+}
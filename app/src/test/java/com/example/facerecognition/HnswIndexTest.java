@@ -0,0 +1,142 @@
+package com.example.facerecognition;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HnswIndexTest {
+
+    private static final int DIMENSION = 16;
+    private static final int SIZE = 500;
+
+    @Test
+    public void search_findsExactNearestMostOfTheTime() {
+        Random random = new Random(1);
+        FaceGallery gallery = new FaceGallery(DIMENSION);
+        HnswIndex index = fill(random, gallery, SIZE);
+
+        int[] labels = new int[1];
+        float[] similarities = new float[1];
+        float[] query = new float[DIMENSION];
+        FaceGallery.Match match = new FaceGallery.Match();
+        int hits = 0;
+        for (int q = 0; q < 100; q++) {
+            randomEmbedding(random, query);
+            gallery.findNearest(query, 0, match);
+            assertEquals(1, index.search(query, 0, 1, labels, similarities));
+            if (labels[0] == match.id) {
+                hits++;
+                assertEquals(match.similarity, similarities[0], 1e-5);
+            }
+        }
+        assertTrue("recall " + hits + "%", hits >= 95);
+    }
+
+    @Test
+    public void search_returnsResultsFromTheClosest() {
+        HnswIndex index = fill(new Random(2), new FaceGallery(DIMENSION), SIZE);
+        int[] labels = new int[10];
+        float[] similarities = new float[10];
+        float[] query = new float[DIMENSION];
+        randomEmbedding(new Random(3), query);
+
+        assertEquals(10, index.search(query, 0, 10, labels, similarities));
+        for (int i = 1; i < 10; i++)
+            assertTrue(similarities[i - 1] >= similarities[i]);
+    }
+
+    @Test
+    public void remove_stillReturnsKLiveResults() {
+        Random random = new Random(4);
+        FaceGallery gallery = new FaceGallery(DIMENSION);
+        HnswIndex index = fill(random, gallery, SIZE);
+
+        // The nearest neighbors of the query are removed, so the search has to walk past them
+        float[] query = new float[DIMENSION];
+        gallery.getEmbedding(0, query, 0);
+        int[] labels = new int[20];
+        float[] similarities = new float[20];
+        index.search(query, 0, 20, labels, similarities);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1, index.remove(labels[i]));
+            gallery.remove(labels[i]);
+        }
+        assertEquals(SIZE - 10, index.size());
+
+        int k = 5;
+        assertEquals(k, index.search(query, 0, k, labels, similarities));
+        FaceGallery.Match match = new FaceGallery.Match();
+        gallery.findNearest(query, 0, match);
+        for (int i = 0; i < k; i++)
+            assertEquals(-1, indexOf(labels, i, labels[i])); // No duplicates
+        assertEquals(match.id, labels[0]);
+        for (int i = 0; i < k; i++)
+            assertTrue(gallery.remove(labels[i]) == 1); // Only live labels
+    }
+
+    @Test
+    public void remove_compactsOnceHalfIsRemoved() {
+        Random random = new Random(5);
+        FaceGallery gallery = new FaceGallery(DIMENSION);
+        HnswIndex index = fill(random, gallery, 100);
+
+        for (int i = 0; i < 60; i++)
+            index.remove(i);
+        assertEquals(40, index.size());
+
+        // Compacted at the 51st removal, the 9 nodes removed afterwards are still in the graph
+        float[] embedding = new float[DIMENSION];
+        randomEmbedding(random, embedding);
+        assertEquals(49, index.add(1000, embedding, 0));
+
+        int[] labels = new int[1];
+        float[] similarities = new float[1];
+        assertEquals(1, index.search(embedding, 0, 1, labels, similarities));
+        assertEquals(1000, labels[0]);
+        assertEquals(1, similarities[0], 1e-5);
+
+        gallery.getEmbedding(70, embedding, 0);
+        assertEquals(1, index.search(embedding, 0, 1, labels, similarities));
+        assertEquals(70, labels[0]);
+    }
+
+    @Test
+    public void remove_allLeavesAnEmptyIndex() {
+        HnswIndex index = new HnswIndex(DIMENSION);
+        float[] embedding = new float[DIMENSION];
+        randomEmbedding(new Random(6), embedding);
+        index.add(1, embedding, 0);
+        index.add(1, embedding, 0);
+
+        assertEquals(2, index.remove(1));
+        assertEquals(0, index.size());
+        assertEquals(0, index.search(embedding, 0, 1, new int[1], new float[1]));
+    }
+
+    private static HnswIndex fill(Random random, FaceGallery gallery, int size) {
+        HnswIndex index = new HnswIndex(DIMENSION);
+        float[] embedding = new float[DIMENSION];
+        for (int i = 0; i < size; i++) {
+            randomEmbedding(random, embedding);
+            gallery.add(i, embedding, 0);
+            index.add(i, embedding, 0);
+        }
+        return index;
+    }
+
+    private static int indexOf(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    static void randomEmbedding(Random random, float[] embedding) {
+        for (int i = 0; i < embedding.length; i++)
+            embedding[i] = (float) random.nextGaussian();
+        FaceGallery.normalize(embedding, 0, embedding.length);
+    }
+}
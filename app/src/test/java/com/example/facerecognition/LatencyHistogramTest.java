@@ -0,0 +1,56 @@
+package com.example.facerecognition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void getPercentile_returnsBucketUpperBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * MS);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100 * MS, histogram.getMax());
+        assertEquals(50 * MS + LatencyHistogram.BUCKET_NANOS, histogram.getPercentile(50));
+        assertEquals(99 * MS + LatencyHistogram.BUCKET_NANOS, histogram.getPercentile(99));
+        assertEquals(100 * MS, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void getPercentiles_matchesGetPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 1000; i++)
+            histogram.record((i * 7919L % 1000) * 250000L);
+        histogram.record(5000 * MS); // Beyond the tracked range
+
+        double[] percentiles = { 0, 50, 95, 99, 99.9, 100 };
+        long[] values = new long[percentiles.length];
+        histogram.getPercentiles(percentiles, values);
+        for (int i = 0; i < percentiles.length; i++)
+            assertEquals(histogram.getPercentile(percentiles[i]), values[i]);
+    }
+
+    @Test
+    public void getPercentiles_emptyHistogramIsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = { -1, -1 };
+        histogram.getPercentiles(new double[] { 50, 99 }, values);
+        assertEquals(0, values[0]);
+        assertEquals(0, values[1]);
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void reset_dropsSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3 * MS);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
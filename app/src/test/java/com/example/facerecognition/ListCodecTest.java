@@ -0,0 +1,31 @@
+package com.example.facerecognition;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ListCodecTest {
+
+    @Test
+    public void join_splitRoundTrip() {
+        ArrayList<Integer> ints = new ArrayList<Integer>(Arrays.asList(1, -2, Integer.MAX_VALUE));
+        assertEquals(ints, ListCodec.splitInts(ListCodec.join(ints)));
+
+        ArrayList<String> strings = new ArrayList<String>(Arrays.asList("a", "", "b c"));
+        assertEquals(strings, ListCodec.splitStrings(ListCodec.join(strings)));
+    }
+
+    @Test
+    public void join_usesSeparator() {
+        assertEquals("1" + ListCodec.SEPARATOR + "2", ListCodec.join(Arrays.asList(1, 2)));
+    }
+
+    @Test
+    public void split_emptyStringHasNoItems() {
+        assertEquals(0, ListCodec.split("").length);
+        assertTrue(ListCodec.splitDoubles("").isEmpty());
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.facerecognition;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MappedFaceGalleryTest {
+
+    private static final int DIMENSION = 8;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("gallery", ".fgal");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void write_open_roundTrips() throws IOException {
+        FaceGallery gallery = randomGallery(new Random(1), 50);
+        MappedFaceGallery.write(gallery, mFile);
+        assertEquals(MappedFaceGallery.HEADER_SIZE + 50 * DIMENSION * 4 + 50 * 4, mFile.length());
+
+        MappedFaceGallery mapped = MappedFaceGallery.open(mFile);
+        assertEquals(DIMENSION, mapped.getDimension());
+        assertEquals(50, mapped.size());
+        float[] expected = new float[DIMENSION];
+        float[] actual = new float[DIMENSION];
+        for (int i = 0; i < 50; i++) {
+            assertEquals(gallery.getId(i), mapped.getId(i));
+            gallery.getEmbedding(i, expected, 0);
+            mapped.getEmbedding(i, actual, 0);
+            for (int j = 0; j < DIMENSION; j++)
+                assertEquals(expected[j], actual[j], 0);
+        }
+
+        FaceGallery copy = new FaceGallery(DIMENSION);
+        mapped.copyTo(copy);
+        assertEquals(50, copy.size());
+        assertEquals(gallery.getId(49), copy.getId(49));
+    }
+
+    @Test
+    public void findNearest_matchesFaceGallery() throws IOException {
+        Random random = new Random(2);
+        FaceGallery gallery = randomGallery(random, 100);
+        MappedFaceGallery.write(gallery, mFile);
+        MappedFaceGallery mapped = MappedFaceGallery.open(mFile);
+
+        float[] query = new float[DIMENSION + 1];
+        FaceGallery.Match expected = new FaceGallery.Match();
+        FaceGallery.Match actual = new FaceGallery.Match();
+        for (int q = 0; q < 20; q++) {
+            HnswIndexTest.randomEmbedding(random, query);
+            FaceGallery.normalize(query, 1, DIMENSION);
+            assertTrue(gallery.findNearest(query, 1, expected));
+            assertTrue(mapped.findNearest(query, 1, actual));
+            assertEquals(expected.id, actual.id);
+            assertEquals(expected.index, actual.index);
+            assertEquals(expected.similarity, actual.similarity, 1e-6);
+        }
+    }
+
+    @Test
+    public void write_emptyGallery() throws IOException {
+        MappedFaceGallery.write(new FaceGallery(DIMENSION), mFile);
+        MappedFaceGallery mapped = MappedFaceGallery.open(mFile);
+        assertEquals(0, mapped.size());
+        assertFalse(mapped.findNearest(new float[DIMENSION], 0, new FaceGallery.Match()));
+    }
+
+    @Test
+    public void write_replacesExistingFile() throws IOException {
+        MappedFaceGallery.write(randomGallery(new Random(3), 10), mFile);
+        MappedFaceGallery old = MappedFaceGallery.open(mFile);
+        MappedFaceGallery.write(randomGallery(new Random(4), 3), mFile);
+
+        assertEquals(3, MappedFaceGallery.open(mFile).size());
+        assertEquals(10, old.size()); // The old mapping stays valid
+        assertFalse(new File(mFile.getPath() + ".tmp").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void open_rejectsTruncatedFile() throws IOException {
+        MappedFaceGallery.write(randomGallery(new Random(5), 10), mFile);
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(file.length() - 4);
+        } finally {
+            file.close();
+        }
+        MappedFaceGallery.open(mFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void open_rejectsOtherFiles() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(MappedFaceGallery.HEADER_SIZE);
+        } finally {
+            file.close();
+        }
+        MappedFaceGallery.open(mFile);
+    }
+
+    private static FaceGallery randomGallery(Random random, int size) {
+        FaceGallery gallery = new FaceGallery(DIMENSION);
+        float[] embedding = new float[DIMENSION];
+        for (int i = 0; i < size; i++) {
+            HnswIndexTest.randomEmbedding(random, embedding);
+            gallery.add(i % 7, embedding, 0);
+        }
+        return gallery;
+    }
+}
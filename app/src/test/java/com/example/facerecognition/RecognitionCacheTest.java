@@ -0,0 +1,130 @@
+package com.example.facerecognition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RecognitionCacheTest {
+
+    private static final long MS = 1000000L;
+
+    private static RecognitionCache createCache(int capacity) {
+        RecognitionCache cache = new RecognitionCache(2, capacity);
+        cache.setTtl(100);
+        cache.setVerifyIntervals(1000, 200, 0.7f);
+        return cache;
+    }
+
+    @Test
+    public void lookup_hitsUntilTheVerifyInterval() {
+        RecognitionCache cache = createCache(4);
+        assertEquals(-1, cache.lookup(1, 0));
+
+        cache.put(1, 5, 0.9f, new float[] {0.6f, 0.8f}, 0, 0);
+        // Seen every 50 ms, so only the confident interval of 1000 ms ends the hits
+        long now = 0;
+        int index = -1;
+        for (now = 50 * MS; now <= 1000 * MS; now += 50 * MS) {
+            index = cache.lookup(1, now);
+            assertTrue("miss at " + now / MS + " ms", index >= 0);
+        }
+        assertEquals(5, cache.getIdentity(index));
+        assertEquals(0.9f, cache.getSimilarity(index), 0);
+        float[] embedding = new float[3];
+        cache.getEmbedding(index, embedding, 1);
+        assertEquals(0.6f, embedding[1], 0);
+        assertEquals(0.8f, embedding[2], 0);
+
+        assertEquals(-1, cache.lookup(1, now));
+        assertEquals(20, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void lookup_verifiesUncertainResultsSooner() {
+        RecognitionCache cache = createCache(4);
+        cache.put(1, 5, 0.6f, null, 0, 0); // Below the confident similarity
+        cache.put(2, FaceRecognizer.UNKNOWN, 0.9f, null, 0, 0);
+
+        assertTrue(cache.lookup(1, 100 * MS) >= 0);
+        assertTrue(cache.lookup(2, 100 * MS) >= 0);
+        assertEquals(-1, cache.lookup(1, 201 * MS));
+        assertEquals(-1, cache.lookup(2, 201 * MS));
+    }
+
+    @Test
+    public void lookup_missesAfterTheTtl() {
+        RecognitionCache cache = createCache(4);
+        cache.put(1, 5, 0.9f, null, 0, 0);
+        assertEquals(-1, cache.lookup(1, 101 * MS));
+    }
+
+    @Test
+    public void put_storesZerosWithoutEmbedding() {
+        RecognitionCache cache = createCache(4);
+        cache.put(1, 5, 0.9f, new float[] {1, 0}, 0, 0);
+        cache.put(1, 6, 0.8f, null, 0, 0);
+
+        assertEquals(1, cache.size());
+        int index = cache.lookup(1, 0);
+        assertEquals(6, cache.getIdentity(index));
+        float[] embedding = {7, 7};
+        cache.getEmbedding(index, embedding, 0);
+        assertEquals(0, embedding[0], 0);
+        assertEquals(0, embedding[1], 0);
+    }
+
+    @Test
+    public void put_dropsExpiredTracksBeforeEvicting() {
+        RecognitionCache cache = createCache(2);
+        cache.put(1, 1, 0.9f, null, 0, 0);
+        cache.put(2, 2, 0.9f, null, 0, 50 * MS);
+
+        cache.put(3, 3, 0.9f, null, 0, 120 * MS); // Track 1 expired
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.getEvictions());
+        assertTrue(cache.lookup(2, 120 * MS) >= 0);
+        assertEquals(-1, cache.lookup(1, 120 * MS));
+    }
+
+    @Test
+    public void put_evictsTheLeastRecentlySeenTrack() {
+        RecognitionCache cache = createCache(3);
+        cache.put(1, 1, 0.9f, null, 0, 0);
+        cache.put(2, 2, 0.9f, null, 0, 10 * MS);
+        cache.put(3, 3, 0.9f, null, 0, 20 * MS);
+        assertTrue(cache.lookup(1, 30 * MS) >= 0); // Track 2 is now the least recently seen
+
+        cache.put(4, 4, 0.9f, null, 0, 40 * MS);
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(-1, cache.lookup(2, 40 * MS));
+        assertTrue(cache.lookup(1, 40 * MS) >= 0);
+        assertTrue(cache.lookup(3, 40 * MS) >= 0);
+        assertTrue(cache.lookup(4, 40 * MS) >= 0);
+    }
+
+    @Test
+    public void invalidate_keepsTheOtherTracks() {
+        RecognitionCache cache = createCache(4);
+        cache.put(1, 1, 0.9f, new float[] {1, 0}, 0, 0);
+        cache.put(2, 2, 0.9f, new float[] {0, 1}, 0, 0);
+        cache.put(3, 3, 0.9f, new float[] {-1, 0}, 0, 0);
+
+        cache.invalidate(1);
+        cache.invalidate(42);
+        assertEquals(2, cache.size());
+        assertEquals(-1, cache.lookup(1, 0));
+
+        // The last entry was moved into the freed slot with its embedding
+        int index = cache.lookup(3, 0);
+        assertEquals(3, cache.getIdentity(index));
+        float[] embedding = new float[2];
+        cache.getEmbedding(index, embedding, 0);
+        assertEquals(-1, embedding[0], 0);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(-1, cache.lookup(2, 0));
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.facerecognition.benchmark;
+
+import com.example.facerecognition.FaceGallery;
+import com.example.facerecognition.HnswIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Approximate search of the HNSW index against the exact scan of the gallery, for several
+ * candidate list sizes. The queries are noisy copies of enrolled embeddings, like a new photo
+ * of an enrolled person. The recall of each setting is printed once by the setup.
+ * FlannBasedMatcher needs the native library, it is compared in GalleryIndexBenchmark on a device.
+ */
+@State(Scope.Thread)
+public class AnnBenchmark {
+
+    private static final int DIMENSION = 128;
+    private static final int QUERIES = 256;
+
+    @Param({"10000", "50000"})
+    public int size;
+
+    @Param({"16", "50", "200"})
+    public int ef;
+
+    private FaceGallery mGallery;
+    private HnswIndex mIndex;
+    private float[][] mQueries;
+    private int mNext;
+    private final FaceGallery.Match mMatch = new FaceGallery.Match();
+    private final int[] mLabels = new int[1];
+    private final float[] mSimilarities = new float[1];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        mGallery = new FaceGallery(DIMENSION, size);
+        mIndex = new HnswIndex(DIMENSION);
+        float[] embedding = new float[DIMENSION];
+        for (int i = 0; i < size; i++) {
+            GalleryBenchmark.randomEmbedding(random, embedding);
+            mGallery.add(i, embedding, 0);
+            mIndex.add(i, embedding, 0);
+        }
+        mIndex.setEf(ef);
+
+        mQueries = new float[QUERIES][DIMENSION];
+        for (float[] query : mQueries) {
+            mGallery.getEmbedding(random.nextInt(size), query, 0);
+            for (int i = 0; i < DIMENSION; i++)
+                query[i] += (float) (0.5 * random.nextGaussian() / Math.sqrt(DIMENSION));
+            FaceGallery.normalize(query, 0, DIMENSION);
+        }
+
+        int hits = 0;
+        for (float[] query : mQueries) {
+            mGallery.findNearest(query, 0, mMatch);
+            if (mIndex.search(query, 0, 1, mLabels, mSimilarities) == 1 && mLabels[0] == mMatch.id)
+                hits++;
+        }
+        System.out.println("size " + size + " ef " + ef + " recall@1 " + (double) hits / QUERIES);
+    }
+
+    @Benchmark
+    public int hnsw() {
+        float[] query = mQueries[mNext++ % QUERIES];
+        mIndex.search(query, 0, 1, mLabels, mSimilarities);
+        return mLabels[0];
+    }
+
+    @Benchmark
+    public int exact() {
+        float[] query = mQueries[mNext++ % QUERIES];
+        mGallery.findNearest(query, 0, mMatch);
+        return mMatch.id;
+    }
+}
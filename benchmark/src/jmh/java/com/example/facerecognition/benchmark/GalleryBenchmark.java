@@ -0,0 +1,53 @@
+package com.example.facerecognition.benchmark;
+
+import com.example.facerecognition.FaceGallery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Brute-force search of the face gallery with random normalized embeddings.
+ */
+@State(Scope.Thread)
+public class GalleryBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int size;
+
+    @Param({"128", "512"})
+    public int dimension;
+
+    private FaceGallery mGallery;
+    private float[] mQuery;
+    private final FaceGallery.Match mMatch = new FaceGallery.Match();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        mGallery = new FaceGallery(dimension, size);
+        float[] embedding = new float[dimension];
+        for (int i = 0; i < size; i++) {
+            randomEmbedding(random, embedding);
+            mGallery.add(i, embedding, 0);
+        }
+        mQuery = new float[dimension];
+        randomEmbedding(random, mQuery);
+    }
+
+    static void randomEmbedding(Random random, float[] embedding) {
+        for (int i = 0; i < embedding.length; i++)
+            embedding[i] = (float) random.nextGaussian();
+        FaceGallery.normalize(embedding, 0, embedding.length);
+    }
+
+    @Benchmark
+    public FaceGallery.Match findNearest() {
+        mGallery.findNearest(mQuery, 0, mMatch);
+        return mMatch;
+    }
+}
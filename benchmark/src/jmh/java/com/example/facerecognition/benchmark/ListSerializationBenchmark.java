@@ -0,0 +1,74 @@
+package com.example.facerecognition.benchmark;
+
+import com.example.facerecognition.ListCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The way TinyDB stores lists in the shared preferences: the items are joined by ListCodec
+ * into a single String and split back when read.
+ */
+@State(Scope.Thread)
+public class ListSerializationBenchmark {
+
+    @Param({"16", "128", "1024"})
+    public int size;
+
+    private ArrayList<Integer> mInts;
+    private ArrayList<String> mStrings;
+    private String mJoinedInts;
+    private String mJoinedStrings;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        mInts = new ArrayList<Integer>(size);
+        mStrings = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            mInts.add(random.nextInt());
+            mStrings.add("face_" + random.nextInt(100000));
+        }
+        mJoinedInts = ListCodec.join(mInts);
+        mJoinedStrings = ListCodec.join(mStrings);
+    }
+
+    /**
+     * TinyDB.putListInt() without the preferences
+     */
+    @Benchmark
+    public String putListInt() {
+        return ListCodec.join(mInts);
+    }
+
+    /**
+     * TinyDB.getListInt() without the preferences
+     */
+    @Benchmark
+    public ArrayList<Integer> getListInt() {
+        return ListCodec.splitInts(mJoinedInts);
+    }
+
+    /**
+     * TinyDB.putListString() without the preferences
+     */
+    @Benchmark
+    public String putListString() {
+        return ListCodec.join(mStrings);
+    }
+
+    /**
+     * TinyDB.getListString() without the preferences
+     */
+    @Benchmark
+    public List<String> getListString() {
+        return ListCodec.splitStrings(mJoinedStrings);
+    }
+}
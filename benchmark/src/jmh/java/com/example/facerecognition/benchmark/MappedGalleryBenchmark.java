@@ -0,0 +1,65 @@
+package com.example.facerecognition.benchmark;
+
+import com.example.facerecognition.FaceGallery;
+import com.example.facerecognition.MappedFaceGallery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Opening and scanning a memory-mapped gallery file, compared with GalleryBenchmark's
+ * scan of the heap gallery.
+ */
+@State(Scope.Thread)
+public class MappedGalleryBenchmark {
+
+    private static final int DIMENSION = 128;
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    private File mFile;
+    private MappedFaceGallery mGallery;
+    private float[] mQuery;
+    private final FaceGallery.Match mMatch = new FaceGallery.Match();
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        FaceGallery gallery = new FaceGallery(DIMENSION, size);
+        float[] embedding = new float[DIMENSION];
+        for (int i = 0; i < size; i++) {
+            GalleryBenchmark.randomEmbedding(random, embedding);
+            gallery.add(i, embedding, 0);
+        }
+        mFile = File.createTempFile("gallery", ".bin");
+        MappedFaceGallery.write(gallery, mFile);
+        mGallery = MappedFaceGallery.open(mFile);
+        mQuery = new float[DIMENSION];
+        GalleryBenchmark.randomEmbedding(random, mQuery);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Benchmark
+    public MappedFaceGallery open() throws IOException {
+        return MappedFaceGallery.open(mFile);
+    }
+
+    @Benchmark
+    public FaceGallery.Match findNearest() {
+        mGallery.findNearest(mQuery, 0, mMatch);
+        return mMatch;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.facerecognition.benchmark;
+
+import com.example.facerecognition.DrawTransform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The math CameraBridgeViewBase does to draw a frame: mapping the display rotation
+ * to the screen orientation, then to the rotation and mirroring of the frame, the scale
+ * to fit the canvas and the resulting affine transform, as computed by DrawTransform.
+ */
+@State(Scope.Thread)
+public class OrientationBenchmark {
+
+    @Param({"false", "true"})
+    public boolean frontCamera;
+
+    private final float[] mMatrix = new float[DrawTransform.MATRIX_SIZE];
+    private int mRotation;
+    private int mCachedOrientation = Integer.MIN_VALUE;
+
+    private static final int BITMAP_WIDTH = 640;
+    private static final int BITMAP_HEIGHT = 480;
+    private static final int CANVAS_WIDTH = 1080;
+    private static final int CANVAS_HEIGHT = 1920;
+    private static final int DISPLAY_WIDTH = 1080;
+    private static final int DISPLAY_HEIGHT = 1920;
+
+    @Setup
+    public void setup() {
+        mRotation = DrawTransform.ROTATION_0;
+    }
+
+    /**
+     * The transform computed for every frame
+     */
+    @Benchmark
+    public float[] perFrame() {
+        int orientation = DrawTransform.screenOrientation(mRotation, DISPLAY_WIDTH, DISPLAY_HEIGHT);
+        updateMatrix(orientation);
+        return mMatrix;
+    }
+
+    /**
+     * The transform computed only when the orientation changes, the current state of the view
+     */
+    @Benchmark
+    public float[] cached() {
+        int orientation = DrawTransform.screenOrientation(mRotation, DISPLAY_WIDTH, DISPLAY_HEIGHT);
+        if (orientation != mCachedOrientation) {
+            updateMatrix(orientation);
+            mCachedOrientation = orientation;
+        }
+        return mMatrix;
+    }
+
+    private void updateMatrix(int orientation) {
+        DrawTransform.computeMatrix(orientation, frontCamera, false,
+                BITMAP_WIDTH, BITMAP_HEIGHT, CANVAS_WIDTH, CANVAS_HEIGHT, mMatrix);
+    }
+}
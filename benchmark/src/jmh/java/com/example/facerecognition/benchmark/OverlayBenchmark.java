@@ -0,0 +1,82 @@
+package com.example.facerecognition.benchmark;
+
+import com.example.facerecognition.CharFormat;
+import com.example.facerecognition.LatencyHistogram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.DecimalFormat;
+import java.util.Random;
+
+/**
+ * Building the text drawn over the preview: the fps label and the profiler statistics.
+ * Only the text is built, drawing needs an Android canvas.
+ */
+@State(Scope.Thread)
+public class OverlayBenchmark {
+
+    private static final DecimalFormat FPS_FORMAT = new DecimalFormat("0.00");
+    private static final String[] STAGE_NAMES = {
+            "queue", "color", "listener", "detect", "toBitmap", "draw", "total"
+    };
+
+    private final char[] mText = new char[16 + LatencyHistogram.MAX_SUMMARY_LENGTH];
+    private final long[] mPercentiles = new long[LatencyHistogram.SUMMARY_PERCENTILE_COUNT];
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGE_NAMES.length];
+    private double mFps;
+    private int mWidth = 640;
+    private int mHeight = 480;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        mFps = 29.97;
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i] = new LatencyHistogram();
+            for (int j = 0; j < 1000; j++) // Synthetic frame latencies around 5 ms
+                mHistograms[i].record((long) (5000000 + random.nextGaussian() * 2000000));
+        }
+    }
+
+    /**
+     * The label of org.opencv.android.FpsMeter
+     */
+    @Benchmark
+    public String fpsLabelString() {
+        return FPS_FORMAT.format(mFps) + " FPS@" + Integer.valueOf(mWidth) + "x" + Integer.valueOf(mHeight);
+    }
+
+    /**
+     * The label of the app's FpsMeter
+     */
+    @Benchmark
+    public int fpsLabelChars() {
+        int len = CharFormat.appendTenths(mText, 0, Math.round(mFps * 10));
+        len = CharFormat.append(mText, len, " FPS @");
+        len = CharFormat.append(mText, len, mWidth);
+        mText[len++] = 'x';
+        return CharFormat.append(mText, len, mHeight);
+    }
+
+    /**
+     * All of the FrameProfiler lines, including the percentile lookups
+     */
+    @Benchmark
+    public int profilerLines() {
+        int total = 0;
+        for (int stage = 0; stage < mHistograms.length; stage++)
+            total += mHistograms[stage].appendSummary(mText, 0, STAGE_NAMES[stage], mPercentiles);
+        return total;
+    }
+
+    /**
+     * Recording a sample into a histogram, done several times per frame
+     */
+    @Benchmark
+    public void histogramRecord() {
+        mHistograms[0].record(4200000);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.facerecognition.benchmark;
+
+import com.example.facerecognition.FaceRects;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Conversion of the detection result to Java. The native Mat is replaced by the int array
+ * FaceRects.fill(MatOfRect) reads it into, so only the Java side of the conversion is
+ * measured. MatOfRect.toArray() and Converters need the native library and are not measured.
+ */
+@State(Scope.Thread)
+public class RectConversionBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int faces;
+
+    private int[] mMatData; // CV_32SC4 rows, as returned by the native get()
+    private final FaceRects mRects = new FaceRects();
+    private final FaceRects mCopy = new FaceRects();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        mMatData = new int[faces * 4];
+        for (int i = 0; i < mMatData.length; i++)
+            mMatData[i] = random.nextInt(640);
+        mRects.fill(mMatData, faces);
+    }
+
+    /**
+     * FaceRects.fill(), done for every detection
+     */
+    @Benchmark
+    public FaceRects fill() {
+        mRects.fill(mMatData, faces);
+        return mRects;
+    }
+
+    /**
+     * FaceRects.set(), the copy DetectionWorker hands out to the frame thread
+     */
+    @Benchmark
+    public FaceRects copy() {
+        mCopy.set(mRects);
+        return mCopy;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.facerecognition.benchmark;
+
+import com.example.facerecognition.RectUtils;
+
+import org.opencv.core.Rect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Back-projection of the faces found on the downscaled detection frame
+ * to the coordinates of the camera frame.
+ */
+@State(Scope.Thread)
+public class RectScaleBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int faces;
+
+    private int[] mSource;
+    private Rect[] mRects;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        mSource = new int[faces * 4];
+        mRects = new Rect[faces];
+        for (int i = 0; i < faces; i++) {
+            mSource[i * 4] = random.nextInt(280);
+            mSource[i * 4 + 1] = random.nextInt(200);
+            mSource[i * 4 + 2] = 20 + random.nextInt(60);
+            mSource[i * 4 + 3] = mSource[i * 4 + 2];
+            mRects[i] = new Rect();
+        }
+    }
+
+    @Benchmark
+    public Rect[] scale() {
+        for (int i = 0; i < faces; i++) { // Restore the unscaled values
+            Rect rect = mRects[i];
+            rect.x = mSource[i * 4];
+            rect.y = mSource[i * 4 + 1];
+            rect.width = mSource[i * 4 + 2];
+            rect.height = mSource[i * 4 + 3];
+        }
+        RectUtils.scale(mRects, 640.0 / 320.0);
+        return mRects;
+    }
+}
@@ -79,6 +79,7 @@ public abstract class CameraGLRendererBase implements GLSurfaceView.Renderer, Su
     protected boolean mHaveSurface = false;
     protected boolean mHaveFBO = false;
     protected boolean mUpdateST = false;
+    protected volatile long mFrameCount = 0; // Number of camera frames taken into the texture
     protected boolean mEnabled = true;
     protected boolean mIsStarted = false;
 
@@ -117,6 +118,7 @@ public abstract class CameraGLRendererBase implements GLSurfaceView.Renderer, Su
             if (mUpdateST) {
                 mSTexture.updateTexImage();
                 mUpdateST = false;
+                mFrameCount++;
             }
 
             GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
@@ -71,6 +71,14 @@ public class CameraGLSurfaceView extends GLSurfaceView {
         return mTexListener;
     }
 
+    /**
+     * @return number of camera frames delivered so far, it does not change when the same
+     * frame is drawn again
+     */
+    public long getFrameCount() {
+        return mRenderer.mFrameCount;
+    }
+
     public void setCameraIndex(int cameraIndex) {
         mRenderer.setCameraIndex(cameraIndex);
     }